@@ -0,0 +1,32 @@
+package com.mooncell.gateway.benchmark;
+
+import org.openjdk.jmh.Main;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基准测试入口：参数原样交给 JMH，未指定结果格式时默认输出 JSON (jmh-result.json)，便于不同提交之间对比
+ * <pre>
+ * java -jar mooncell-benchmarks/target/benchmarks.jar                      # 全部
+ * java -jar mooncell-benchmarks/target/benchmarks.jar LoadBalancer -rff base.json
+ * </pre>
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> argv = new ArrayList<>(List.of(args));
+        if (!argv.contains("-rf")) {
+            argv.add("-rf");
+            argv.add("json");
+            if (!argv.contains("-rff")) {
+                argv.add("-rff");
+                argv.add("jmh-result.json");
+            }
+        }
+        Main.main(argv.toArray(String[]::new));
+    }
+}
@@ -0,0 +1,64 @@
+package com.mooncell.gateway.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 对比两次 JMH JSON 结果 (例如两个提交)，按 基准 + 参数 逐项输出得分变化
+ * <pre>
+ * java -cp mooncell-benchmarks/target/benchmarks.jar com.mooncell.gateway.benchmark.CompareResults base.json head.json
+ * </pre>
+ * 吞吐量模式下变化为正表示变快，平均耗时模式下变化为负表示变快
+ */
+public final class CompareResults {
+
+    private CompareResults() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: CompareResults <base.json> <head.json>");
+            System.exit(2);
+        }
+        Map<String, JsonNode> base = load(new File(args[0]));
+        Map<String, JsonNode> head = load(new File(args[1]));
+
+        System.out.printf("%-90s %14s %14s %9s  %s%n", "Benchmark", "Base", "Head", "Change", "Unit");
+        head.forEach((name, result) -> {
+            JsonNode metric = result.path("primaryMetric");
+            double score = metric.path("score").asDouble();
+            JsonNode previous = base.get(name);
+            if (previous == null) {
+                System.out.printf("%-90s %14s %14.3f %9s  %s%n", name, "-", score, "new", metric.path("scoreUnit").asText());
+                return;
+            }
+            double baseScore = previous.path("primaryMetric").path("score").asDouble();
+            double change = baseScore == 0 ? 0 : (score - baseScore) / baseScore * 100;
+            System.out.printf("%-90s %14.3f %14.3f %+8.1f%%  %s%n",
+                    name, baseScore, score, change, metric.path("scoreUnit").asText());
+        });
+    }
+
+    // 基准名 + 参数 (+ 线程数) -> 结果
+    private static Map<String, JsonNode> load(File file) throws IOException {
+        Map<String, JsonNode> results = new LinkedHashMap<>();
+        for (JsonNode result : new ObjectMapper().readTree(file)) {
+            StringBuilder key = new StringBuilder(result.path("benchmark").asText()
+                    .replace("com.mooncell.gateway.benchmark.", ""));
+            Iterator<Map.Entry<String, JsonNode>> params = result.path("params").fields();
+            while (params.hasNext()) {
+                Map.Entry<String, JsonNode> param = params.next();
+                key.append(' ').append(param.getKey()).append('=').append(param.getValue().asText());
+            }
+            key.append(" threads=").append(result.path("threads").asInt());
+            results.put(key.toString(), result);
+        }
+        return results;
+    }
+}
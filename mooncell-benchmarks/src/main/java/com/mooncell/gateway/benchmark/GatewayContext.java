@@ -0,0 +1,39 @@
+package com.mooncell.gateway.benchmark;
+
+import com.mooncell.gateway.MoonCellGatewayApplication;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 为基准测试启动完整的网关上下文 (不启动 HTTP 服务)：内存 H2、关闭心跳与日志，其余配置与生产一致
+ */
+final class GatewayContext {
+
+    private GatewayContext() {
+    }
+
+    /**
+     * @param overrides 额外配置, e.g. "mooncell.balancer.strategy=p2c-ewma"
+     */
+    static ConfigurableApplicationContext start(String... overrides) {
+        List<String> properties = new ArrayList<>(List.of(
+                // 每个上下文一个独立的内存库，不碰 data/ 下的文件库
+                "spring.datasource.url=jdbc:h2:mem:bench-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1",
+                "mooncell.heartbeat.enabled=false",
+                "logging.level.root=WARN",
+                "logging.level.com.mooncell=OFF"));
+        properties.addAll(List.of(overrides));
+        return new SpringApplicationBuilder(MoonCellGatewayApplication.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .logStartupInfo(false)
+                .properties(properties.toArray(String[]::new))
+                .run();
+    }
+}
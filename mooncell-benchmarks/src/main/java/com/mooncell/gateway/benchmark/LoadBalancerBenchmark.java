@@ -0,0 +1,75 @@
+package com.mooncell.gateway.benchmark;
+
+import com.mooncell.gateway.core.balancer.LoadBalancer;
+import com.mooncell.gateway.core.cache.InstanceEvent;
+import com.mooncell.gateway.core.cache.ModelCacheService;
+import com.mooncell.gateway.core.model.ModelInstance;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link LoadBalancer#next(String)}：各负载均衡策略在不同实例数下的选路开销 (含熔断器许可的获取与归还)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoadBalancerBenchmark {
+
+    private static final String MODEL = "bench-model";
+
+    @Param({"1", "8", "64", "256"})
+    private int instances;
+
+    @Param({"smooth-weighted", "least-outstanding", "p2c-ewma"})
+    private String strategy;
+
+    private ConfigurableApplicationContext context;
+    private LoadBalancer loadBalancer;
+
+    @Setup
+    public void setup() {
+        context = GatewayContext.start("mooncell.balancer.strategy=" + strategy);
+        ModelCacheService cacheService = context.getBean(ModelCacheService.class);
+        for (int i = 0; i < instances; i++) {
+            cacheService.apply(new InstanceEvent.Added(ModelInstance.builder()
+                    .id((long) i)
+                    .providerName("openai")
+                    .modelName(MODEL)
+                    .url("http://bench-" + i + ".invalid/v1")
+                    .apiKey("bench")
+                    // 权重不均匀，避免平滑加权轮询退化为简单轮询
+                    .weight(1 + i % 5)
+                    .isActive(true)
+                    .build()));
+        }
+        loadBalancer = context.getBean(LoadBalancer.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public ModelInstance next() {
+        ModelInstance instance = loadBalancer.next(MODEL);
+        instance.getBreaker().release();
+        return instance;
+    }
+}
@@ -0,0 +1,79 @@
+package com.mooncell.gateway.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mooncell.gateway.api.ChatRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 请求体的 JSON 处理：提交时的流式扫描 ({@link ChatRequest#parse})，
+ * 以及作为基线的完整解析 + 重新序列化 (TaskConsumer 转发前曾经的做法)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestBodyBenchmark {
+
+    // 对话轮数，决定请求体大小 (每轮约 250 字节)
+    @Param({"1", "16", "128"})
+    private int messages;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private byte[] body;
+    private byte[] bodyWithGatewayFields;
+
+    @Setup
+    public void setup() {
+        StringBuilder history = new StringBuilder();
+        for (int i = 0; i < messages; i++) {
+            if (i > 0) {
+                history.append(',');
+            }
+            history.append("{\"role\": \"").append(i % 2 == 0 ? "user" : "assistant")
+                    .append("\", \"content\": \"Message ").append(i).append(": ")
+                    .append("The quick brown fox jumps over the lazy dog. ".repeat(5)).append("\"}");
+        }
+        String fields = "\"model\": \"gpt-4\", \"stream\": true, \"temperature\": 0.7, \"max_tokens\": 512, "
+                + "\"tools\": [{\"type\": \"function\", \"function\": {\"name\": \"lookup\", \"parameters\": {\"type\": \"object\"}}}], "
+                + "\"messages\": [" + history + "]";
+        body = ("{" + fields + "}").getBytes(StandardCharsets.UTF_8);
+        bodyWithGatewayFields = ("{\"priority\": \"batch\", " + fields + ", \"tenant\": \"acme\"}")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    // 只扫描顶层字段，请求体原样转发
+    @Benchmark
+    public ChatRequest scan() throws IOException {
+        return ChatRequest.parse(body);
+    }
+
+    // 扫描并剔除 priority / tenant (重建请求体)
+    @Benchmark
+    public ChatRequest scanAndStrip() throws IOException {
+        return ChatRequest.parse(bodyWithGatewayFields);
+    }
+
+    // 基线：解析为树再序列化
+    @Benchmark
+    public byte[] treeRoundTrip() throws IOException {
+        JsonNode tree = objectMapper.readTree(body);
+        return objectMapper.writeValueAsBytes(tree);
+    }
+}
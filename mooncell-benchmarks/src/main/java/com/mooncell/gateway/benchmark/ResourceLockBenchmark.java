@@ -0,0 +1,67 @@
+package com.mooncell.gateway.benchmark;
+
+import com.mooncell.gateway.core.balancer.ConcurrencyLimitProperties;
+import com.mooncell.gateway.core.balancer.ResourceLockManager;
+import com.mooncell.gateway.core.model.ModelInstance;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ResourceLockManager#tryLock} / {@link ResourceLockManager#release} 在竞争下的开销：
+ * instances=1 时所有线程争用同一个实例的限流器，实例数增加时竞争分散
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class ResourceLockBenchmark {
+
+    @Param({"1", "4", "64"})
+    private int instances;
+
+    private ResourceLockManager lockManager;
+    private ModelInstance[] targets;
+
+    @Setup
+    public void setup() {
+        ConcurrencyLimitProperties properties = new ConcurrencyLimitProperties();
+        // 上限足够大，测量的是加锁路径本身而不是满载拒绝
+        properties.setInitialLimit(properties.getMaxLimit());
+        lockManager = new ResourceLockManager(properties);
+        targets = new ModelInstance[instances];
+        for (int i = 0; i < instances; i++) {
+            targets[i] = ModelInstance.builder().url("http://bench-" + i + ".invalid/v1").build();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    public boolean lockRelease(Cursor cursor) {
+        ModelInstance instance = targets[cursor.next];
+        cursor.next = (cursor.next + 1) % targets.length;
+        boolean locked = lockManager.tryLock(instance);
+        if (locked) {
+            lockManager.release(instance);
+        }
+        return locked;
+    }
+}
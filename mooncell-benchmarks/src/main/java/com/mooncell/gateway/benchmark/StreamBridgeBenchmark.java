@@ -0,0 +1,89 @@
+package com.mooncell.gateway.benchmark;
+
+import com.mooncell.gateway.core.stream.StreamBridge;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.Disposable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link StreamBridge#emit}：单个流的 chunk 吞吐 (缓冲、追加 event id、交付给已连接的客户端)
+ * 每个 JMH 线程写自己的流，-t 可模拟多个并发流
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StreamBridgeBenchmark {
+
+    // SSE 帧的 data 长度 (字节)，小帧接近逐 token 输出
+    @Param({"64", "1024"})
+    private int chunkBytes;
+
+    @Param({"true", "false"})
+    private boolean eventIds;
+
+    private ConfigurableApplicationContext context;
+    private StreamBridge streamBridge;
+    private byte[] frame;
+    private final List<Disposable> subscribers = new ArrayList<>();
+    private final LongAdder delivered = new LongAdder();
+
+    @Setup
+    public void setup() {
+        context = GatewayContext.start("mooncell.stream.event-ids=" + eventIds);
+        streamBridge = context.getBean(StreamBridge.class);
+        frame = ("data: " + "x".repeat(chunkBytes) + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown() {
+        subscribers.forEach(Disposable::dispose);
+        context.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Stream {
+        String taskId;
+
+        @Setup
+        public void open(StreamBridgeBenchmark benchmark) {
+            taskId = "bench-" + Thread.currentThread().getId();
+            benchmark.streamBridge.open(taskId);
+            // 客户端读得足够快：收到即释放
+            Disposable subscriber = benchmark.streamBridge.attach(taskId, null)
+                    .subscribe(buffer -> {
+                        benchmark.delivered.increment();
+                        DataBufferUtils.release(buffer);
+                    });
+            synchronized (benchmark.subscribers) {
+                benchmark.subscribers.add(subscriber);
+            }
+        }
+    }
+
+    @Benchmark
+    public void emit(Stream stream) {
+        streamBridge.emit(stream.taskId, DefaultDataBufferFactory.sharedInstance.wrap(frame));
+    }
+}
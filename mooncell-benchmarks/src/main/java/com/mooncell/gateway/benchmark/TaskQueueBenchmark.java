@@ -0,0 +1,149 @@
+package com.mooncell.gateway.benchmark;
+
+import com.mooncell.gateway.core.task.ChatTask;
+import com.mooncell.gateway.core.task.FairTaskQueue;
+import com.mooncell.gateway.core.task.QueueProperties;
+import com.mooncell.gateway.core.task.RingTaskQueue;
+import com.mooncell.gateway.core.task.TaskPriority;
+import com.mooncell.gateway.core.task.TaskQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * 任务队列多生产者吞吐：producers 个线程并发 offer，单个消费者 poll (与调度器的出队线程一致)，
+ * 对比 ring (无锁环形队列，BLOCKING 等待)、fair (DRR 公平队列) 与 LinkedBlockingQueue 基线。
+ * 每次调用搬运 {@value #TASKS} 个任务，结果为单个任务的平均耗时
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TaskQueueBenchmark {
+
+    private static final int TASKS = 1 << 16;
+    private static final int CAPACITY = 10000;
+    private static final Predicate<String> ADMIT_ALL = model -> true;
+
+    @Param({"1", "4", "16", "64"})
+    private int producers;
+
+    @Param({"ring", "fair", "linked"})
+    private String queue;
+
+    private TaskQueue taskQueue;
+    private ChatTask[] tasks;
+    private ExecutorService executor;
+
+    @Setup
+    public void setup() {
+        QueueProperties properties = new QueueProperties();
+        properties.setType(queue);
+        properties.setCapacity(CAPACITY);
+        properties.setMaxDepthPerQueue(CAPACITY);
+        taskQueue = switch (queue) {
+            case "ring" -> new RingTaskQueue(properties);
+            case "fair" -> new FairTaskQueue(properties);
+            default -> new LinkedTaskQueue(CAPACITY);
+        };
+        // 每个生产者一个租户、模型轮换，fair 队列里是多个子队列而不是一个
+        tasks = new ChatTask[TASKS];
+        for (int i = 0; i < TASKS; i++) {
+            tasks[i] = ChatTask.builder()
+                    .id("task-" + i)
+                    .model("model-" + (i % 4))
+                    .tenant("tenant-" + (i % producers))
+                    .priority(TaskPriority.INTERACTIVE)
+                    .build();
+        }
+        executor = Executors.newFixedThreadPool(producers);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TASKS)
+    public int transfer() throws Exception {
+        Future<?>[] futures = new Future<?>[producers];
+        for (int p = 0; p < producers; p++) {
+            int from = p;
+            futures[p] = executor.submit(() -> {
+                for (int i = from; i < TASKS; i += producers) {
+                    // 队列满时重试，相当于提交方被背压
+                    while (!taskQueue.offer(tasks[i])) {
+                        Thread.yield();
+                    }
+                }
+            });
+        }
+        int received = 0;
+        while (received < TASKS) {
+            if (taskQueue.poll(1, TimeUnit.MILLISECONDS, ADMIT_ALL) != null) {
+                received++;
+            }
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        return received;
+    }
+
+    /**
+     * LinkedBlockingQueue 基线：不做模型准入与公平调度
+     */
+    private static final class LinkedTaskQueue implements TaskQueue {
+
+        private final LinkedBlockingQueue<ChatTask> tasks;
+
+        LinkedTaskQueue(int capacity) {
+            this.tasks = new LinkedBlockingQueue<>(capacity);
+        }
+
+        @Override
+        public boolean offer(ChatTask task) {
+            return tasks.offer(task);
+        }
+
+        @Override
+        public ChatTask poll(long timeout, TimeUnit unit, Predicate<String> admit) throws InterruptedException {
+            return tasks.poll(timeout, unit);
+        }
+
+        @Override
+        public void signal() {
+        }
+
+        @Override
+        public int size() {
+            return tasks.size();
+        }
+
+        @Override
+        public Map<String, Integer> depths() {
+            return Map.of("linked", tasks.size());
+        }
+    }
+}
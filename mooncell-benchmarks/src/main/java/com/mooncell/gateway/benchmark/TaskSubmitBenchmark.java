@@ -0,0 +1,72 @@
+package com.mooncell.gateway.benchmark;
+
+import com.mooncell.gateway.api.ChatRequest;
+import com.mooncell.gateway.core.task.TaskManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TaskManager#submit}：限流 -> 幂等检查 -> WAL 组提交 (内存 H2) -> 入队，直到返回任务 ID
+ * 模型没有配置实例，入队的任务由调度器立即判为失败，终态任务由 TaskPurger 每秒删除，避免内存库无限增长
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Threads(8)
+@State(Scope.Benchmark)
+public class TaskSubmitBenchmark {
+
+    private static final String BODY = """
+            {"model": "bench-model", "stream": true, "max_tokens": 256, %s"messages": [
+              {"role": "system", "content": "You are a helpful assistant."},
+              {"role": "user", "content": "Summarize the following paragraph in one sentence."}]}""";
+
+    // 带幂等键时每次请求一个新键 (走内存索引判定，不查库)
+    @Param({"false", "true"})
+    private boolean idempotencyKey;
+
+    private ConfigurableApplicationContext context;
+    private TaskManager taskManager;
+
+    @Setup
+    public void setup() {
+        context = GatewayContext.start(
+                "mooncell.task.retention.mode=DELETE",
+                "mooncell.task.retention.hot-retention-ms=1000",
+                "mooncell.task.retention.interval-ms=1000",
+                "mooncell.task.retention.max-batches-per-run=1000",
+                "mooncell.stream.retention-ms=1000");
+        taskManager = context.getBean(TaskManager.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String submit() throws IOException {
+        String key = idempotencyKey ? "\"idempotencyKey\": \"" + UUID.randomUUID() + "\", " : "";
+        ChatRequest request = ChatRequest.parse(BODY.formatted(key).getBytes(StandardCharsets.UTF_8));
+        return taskManager.submit(request, "bench", null).block();
+    }
+}
@@ -0,0 +1,133 @@
+package com.mooncell.gateway.api;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * OpenAI Chat Completions 请求体的原始字节视图：网关只用流式解析器扫描一遍顶层字段，取出路由与调度需要的值，
+ * 其余字段 (messages、tools、top_p 等) 不解码、不绑定，请求体按原样持久化并转发给上游。
+ * <p>
+ * 网关字段 (idempotencyKey / priority / tenant) 不转发给上游：请求体中出现时才重建一份去掉这些字段的副本。
+ */
+@Getter
+public class ChatRequest {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    // 转发给上游的请求体
+    private final byte[] body;
+    private final String model;
+    private final Boolean stream;
+    private final Double temperature;
+    private final Integer maxTokens;
+    private final String idempotencyKey;
+    private final String priority;
+    // 租户，可由 X-Tenant-Id 请求头覆盖
+    @Setter
+    private String tenant;
+
+    private ChatRequest(byte[] body, String model, Boolean stream, Double temperature, Integer maxTokens,
+                        String idempotencyKey, String priority, String tenant) {
+        this.body = body;
+        this.model = model;
+        this.stream = stream;
+        this.temperature = temperature;
+        this.maxTokens = maxTokens;
+        this.idempotencyKey = idempotencyKey;
+        this.priority = priority;
+        this.tenant = tenant;
+    }
+
+    /**
+     * 扫描请求体 (必须是 JSON 对象)，格式错误时抛出 {@link JsonParseException}
+     */
+    public static ChatRequest parse(byte[] body) throws IOException {
+        String model = null;
+        Boolean stream = null;
+        Double temperature = null;
+        Integer maxTokens = null;
+        String idempotencyKey = null;
+        String priority = null;
+        String tenant = null;
+        // 只有需要剔除网关字段时才记录各字段的字节范围
+        List<long[]> kept = new ArrayList<>();
+        boolean strip = false;
+
+        try (JsonParser parser = JSON.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Request body must be a JSON object");
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                long start = parser.currentTokenLocation().getByteOffset();
+                JsonToken value = parser.nextToken();
+                boolean gatewayField = false;
+                switch (name) {
+                    case "model" -> model = scalar(parser, value);
+                    case "stream" -> stream = value == JsonToken.VALUE_TRUE ? Boolean.TRUE
+                            : value == JsonToken.VALUE_FALSE ? Boolean.FALSE : null;
+                    case "temperature" -> temperature = value.isNumeric() ? parser.getDoubleValue() : null;
+                    case "max_tokens" -> maxTokens = value == JsonToken.VALUE_NUMBER_INT ? parser.getIntValue() : null;
+                    case "idempotencyKey" -> {
+                        idempotencyKey = scalar(parser, value);
+                        gatewayField = true;
+                    }
+                    case "priority" -> {
+                        priority = scalar(parser, value);
+                        gatewayField = true;
+                    }
+                    case "tenant" -> {
+                        tenant = scalar(parser, value);
+                        gatewayField = true;
+                    }
+                    default -> parser.skipChildren();
+                }
+                // 字符串值是惰性解析的，结束位置之前要先读完当前 token
+                parser.finishToken();
+                if (gatewayField) {
+                    strip = true;
+                } else {
+                    kept.add(new long[]{start, parser.currentLocation().getByteOffset()});
+                }
+            }
+            if (token != JsonToken.END_OBJECT || parser.nextToken() != null) {
+                throw new JsonParseException(parser, "Malformed request body");
+            }
+        }
+        return new ChatRequest(strip ? rebuild(body, kept) : body,
+                model, stream, temperature, maxTokens, idempotencyKey, priority, tenant);
+    }
+
+    // 字符串以外的值 (对象、数组) 跳过
+    private static String scalar(JsonParser parser, JsonToken value) throws IOException {
+        if (value.isScalarValue()) {
+            return value == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    private static byte[] rebuild(byte[] body, List<long[]> fields) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length);
+        out.write('{');
+        for (int i = 0; i < fields.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            long[] range = fields.get(i);
+            out.write(body, (int) range[0], (int) (range[1] - range[0]));
+        }
+        out.write('}');
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,40 @@
+package com.mooncell.gateway.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.ClassUtils;
+import reactor.blockhound.BlockHound;
+
+/**
+ * Event Loop 阻塞检测模式
+ * 以 -Dmooncell.blockhound=true 启动 (mvn -Pblockhound 会自动加上) 时安装 BlockHound，
+ * 任何在 Reactor 非阻塞线程 (Netty Event Loop、parallel 等) 上的阻塞调用都会直接抛出 BlockingOperationError，
+ * 测试因此失败，从而在构建阶段暴露问题。
+ * 通过 META-INF/spring.factories 注册，应用启动和 @SpringBootTest 都会经过这里。
+ * BlockHound 是 provided 依赖，只在测试与 spring-boot:run 的类路径上，可执行 jar 中开启时只打印警告。
+ */
+@Slf4j
+public class BlockHoundSupport implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+    public static final String ENABLED_PROPERTY = "mooncell.blockhound";
+
+    private static final String BLOCKHOUND_CLASS = "reactor.blockhound.BlockHound";
+
+    @Override
+    public void initialize(ConfigurableApplicationContext context) {
+        if (!Boolean.getBoolean(ENABLED_PROPERTY)) {
+            return;
+        }
+        if (!ClassUtils.isPresent(BLOCKHOUND_CLASS, context.getClassLoader())) {
+            log.warn("{}=true but BlockHound is not on the classpath, blocking detection is disabled", ENABLED_PROPERTY);
+            return;
+        }
+        // 重复调用 install 是安全的，只会生效一次
+        BlockHound.install(builder -> builder
+                // 日志输出到控制台/文件属于可接受的阻塞
+                .allowBlockingCallsInside("ch.qos.logback.core.OutputStreamAppender", "writeBytes")
+                // 任务 ID：SecureRandom 读 /dev/urandom，不会真正阻塞
+                .allowBlockingCallsInside("java.util.UUID", "randomUUID"));
+    }
+}
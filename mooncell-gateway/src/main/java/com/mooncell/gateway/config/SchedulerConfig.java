@@ -0,0 +1,39 @@
+package com.mooncell.gateway.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 执行模型：Event Loop 只做非阻塞工作，所有 JDBC (MyBatis) 调用统一切到有界的阻塞 I/O 调度器上
+ */
+@Slf4j
+@Configuration
+public class SchedulerConfig {
+
+    /**
+     * 阻塞 I/O 专用调度器
+     * 默认是有界 elastic 线程池 (线程数 + 排队数上限，避免 DB 慢时无限扩线程)；
+     * 运行在 Java 21+ 且开启 mooncell.blocking.virtual-threads 时改用虚拟线程，每个调用一个虚拟线程
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler jdbcScheduler(@Value("${mooncell.blocking.thread-cap:64}") int threadCap,
+                                   @Value("${mooncell.blocking.queue-cap:100000}") int queueCap,
+                                   @Value("${mooncell.blocking.virtual-threads:false}") boolean virtualThreads) {
+        if (virtualThreads) {
+            Optional<ExecutorService> executor = VirtualThreads.newPerTaskExecutor();
+            if (executor.isPresent()) {
+                log.info("Blocking I/O scheduler running on virtual threads");
+                return Schedulers.fromExecutorService(executor.get(), "mooncell-jdbc");
+            }
+            log.warn("Virtual threads not supported on this JVM, falling back to bounded elastic scheduler");
+        }
+        return Schedulers.newBoundedElastic(threadCap, queueCap, "mooncell-jdbc");
+    }
+}
@@ -0,0 +1,27 @@
+package com.mooncell.gateway.config;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 虚拟线程工具：项目以 Java 17 编译，通过反射在 Java 21+ 运行时启用虚拟线程
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * 每个任务一个虚拟线程的 Executor，当前 JVM 不支持时返回 empty
+     */
+    public static Optional<ExecutorService> newPerTaskExecutor() {
+        try {
+            return Optional.of((ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null));
+        } catch (ReflectiveOperationException e) {
+            return Optional.empty();
+        }
+    }
+}
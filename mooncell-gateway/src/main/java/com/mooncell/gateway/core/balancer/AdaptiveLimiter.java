@@ -0,0 +1,76 @@
+package com.mooncell.gateway.core.balancer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单个实例的自适应并发上限 (AIMD + 延迟梯度)
+ * <ul>
+ *     <li>加性增：请求成功、首 token 时间未明显超过基线、且上限已被用到一半以上时，每个成功请求上限 +1/limit (约每轮 +1)</li>
+ *     <li>乘性减：被限流 (429)、超时或出错，或首 token 时间超过基线的 tolerance 倍 (上游开始排队) 时，上限乘以 backoffRatio</li>
+ * </ul>
+ * 获取许可是一次 CAS，不阻塞；上限调整在锁内完成 (每个请求结束时一次，很短)。
+ */
+public class AdaptiveLimiter {
+
+    private final ConcurrencyLimitProperties properties;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double limit;
+    // 长期 TTFT 基线 (纳秒)
+    private double baselineNanos;
+
+    public AdaptiveLimiter(ConcurrencyLimitProperties properties) {
+        this.properties = properties;
+        this.limit = properties.getInitialLimit();
+    }
+
+    public boolean tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * 请求成功，latencyNanos 为首 token 时间
+     */
+    public synchronized void onSuccess(long latencyNanos) {
+        if (baselineNanos == 0) {
+            baselineNanos = latencyNanos;
+        } else {
+            baselineNanos += properties.getBaselineSmoothing() * (latencyNanos - baselineNanos);
+        }
+        if (latencyNanos > baselineNanos * properties.getLatencyTolerance()) {
+            decrease();
+        } else if (inFlight.get() * 2 >= limit) {
+            // 上限没被用起来时不增长，避免空闲期把上限抬得过高
+            limit = Math.min(properties.getMaxLimit(), limit + 1.0 / limit);
+        }
+    }
+
+    /**
+     * 请求被限流 / 超时 / 失败
+     */
+    public synchronized void onDropped() {
+        decrease();
+    }
+
+    private void decrease() {
+        limit = Math.max(properties.getMinLimit(), limit * properties.getBackoffRatio());
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,39 @@
+package com.mooncell.gateway.core.balancer;
+
+import com.mooncell.gateway.core.model.ModelInstance;
+
+import java.util.List;
+
+/**
+ * 负载均衡策略 SPI
+ * 缓存刷新 (实例列表变化) 时调用 {@link #build(List)} 预计算选择结构，
+ * 请求路径上只调用 {@link Selector#select()}，不做过滤/拷贝，不分配对象。
+ */
+public interface BalancingStrategy {
+
+    /**
+     * 策略名，对应配置项 mooncell.balancer.strategy
+     */
+    String name();
+
+    /**
+     * 为一个模型的实例列表构建选择器 (列表不可变，选择器可以直接持有)
+     */
+    Selector build(List<ModelInstance> instances);
+
+    interface Selector {
+
+        /**
+         * 选出一个健康实例，没有健康实例时返回 null
+         */
+        ModelInstance select();
+    }
+
+    /**
+     * 实例权重，未配置或非法时按 1 处理
+     */
+    static int weightOf(ModelInstance instance) {
+        Integer weight = instance.getWeight();
+        return weight != null && weight > 0 ? weight : 1;
+    }
+}
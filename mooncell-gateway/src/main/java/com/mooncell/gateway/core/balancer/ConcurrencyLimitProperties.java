@@ -0,0 +1,36 @@
+package com.mooncell.gateway.core.balancer;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 实例自适应并发上限配置 (mooncell.limiter.*)
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "mooncell.limiter")
+public class ConcurrencyLimitProperties {
+
+    // 新实例的初始在途上限
+    private int initialLimit = 50;
+
+    private int minLimit = 1;
+
+    private int maxLimit = 500;
+
+    // 被限流 (429)、超时、出错，或首 token 时间明显变长时，上限乘以该系数
+    private double backoffRatio = 0.9;
+
+    // 首 token 时间超过基线的这个倍数视为上游开始排队
+    private double latencyTolerance = 2.0;
+
+    // 基线 (长期 TTFT EWMA) 的平滑系数，越小越稳定
+    private double baselineSmoothing = 0.05;
+
+    // 所有实例都满载时，任务等待许可的最长时间 (毫秒)，期间定期重试，不占用线程
+    private long acquireTimeoutMs = 30000;
+
+    // 等待许可时的重试间隔 (毫秒)
+    private long acquireRetryIntervalMs = 50;
+}
@@ -0,0 +1,11 @@
+package com.mooncell.gateway.core.balancer;
+
+/**
+ * 实例的并发上限已用满 (本地限流，不归因于实例故障)
+ */
+public class InstanceBusyException extends RuntimeException {
+
+    public InstanceBusyException(String url) {
+        super("Server Busy: Resource limit reached for " + url);
+    }
+}
@@ -0,0 +1,73 @@
+package com.mooncell.gateway.core.balancer;
+
+import com.mooncell.gateway.core.model.ModelInstance;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 最少在途请求 (least outstanding requests)
+ * 以 {@link ResourceLockManager} 中实时占用的许可数 / 权重 作为负载，选负载最低的健康实例；
+ * 负载相同时从轮转的起点开始比较，避免总是压到第一个实例上。
+ */
+@Component
+@RequiredArgsConstructor
+public class LeastOutstandingStrategy implements BalancingStrategy {
+
+    public static final String NAME = "least-outstanding";
+
+    private final ResourceLockManager lockManager;
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public Selector build(List<ModelInstance> instances) {
+        return new LeastOutstandingSelector(instances.toArray(new ModelInstance[0]), lockManager);
+    }
+
+    private static final class LeastOutstandingSelector implements Selector {
+
+        private final ModelInstance[] instances;
+        private final int[] weights;
+        private final ResourceLockManager lockManager;
+        private final AtomicInteger offset = new AtomicInteger();
+
+        LeastOutstandingSelector(ModelInstance[] instances, ResourceLockManager lockManager) {
+            this.instances = instances;
+            this.lockManager = lockManager;
+            this.weights = new int[instances.length];
+            for (int i = 0; i < instances.length; i++) {
+                weights[i] = BalancingStrategy.weightOf(instances[i]);
+            }
+        }
+
+        @Override
+        public ModelInstance select() {
+            int n = instances.length;
+            if (n == 0) {
+                return null;
+            }
+            int start = Math.floorMod(offset.getAndIncrement(), n);
+            int best = -1;
+            long bestInFlight = 0;
+            for (int k = 0; k < n; k++) {
+                int i = start + k < n ? start + k : start + k - n;
+                if (!instances[i].isHealthy()) {
+                    continue;
+                }
+                long inFlight = lockManager.inFlight(instances[i]);
+                // 比较 inFlight[i] / weight[i] < inFlight[best] / weight[best]，交叉相乘避免除法
+                if (best < 0 || inFlight * weights[best] < bestInFlight * weights[i]) {
+                    best = i;
+                    bestInFlight = inFlight;
+                }
+            }
+            return best < 0 ? null : instances[best];
+        }
+    }
+}
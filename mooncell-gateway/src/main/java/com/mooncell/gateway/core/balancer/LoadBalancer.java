@@ -2,43 +2,89 @@ package com.mooncell.gateway.core.balancer;
 
 import com.mooncell.gateway.core.cache.ModelCacheService;
 import com.mooncell.gateway.core.model.ModelInstance;
-import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+@Slf4j
 @Component
-@RequiredArgsConstructor
 public class LoadBalancer {
 
     private final ModelCacheService cacheService;
-    private final AtomicInteger counter = new AtomicInteger(0);
+    private final BalancingStrategy strategy;
 
-    // 获取指定模型的下一个可用 Instance
+    // ModelName -> 预计算的选择器 (实例列表变化时重建)
+    private final Map<String, Selection> selections = new ConcurrentHashMap<>();
+
+    public LoadBalancer(ModelCacheService cacheService, List<BalancingStrategy> strategies,
+                        @Value("${mooncell.balancer.strategy:" + SmoothWeightedRoundRobinStrategy.NAME + "}") String name) {
+        this.cacheService = cacheService;
+        this.strategy = strategies.stream()
+                .filter(s -> s.name().equalsIgnoreCase(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown balancing strategy: " + name));
+        log.info("Load balancing strategy: {}", strategy.name());
+    }
+
+    // 获取指定模型的下一个可用 Instance，返回时已占用熔断器许可，调用方需以 onSuccess / onError / release 结束
     public ModelInstance next(String modelName) {
+        return next(modelName, Collections.emptySet());
+    }
+
+    // 同上，跳过 excludedUrls 中的实例 (对冲/故障转移时避开已尝试过的实例)
+    public ModelInstance next(String modelName, Set<String> excludedUrls) {
         List<ModelInstance> instances = cacheService.getInstances(modelName);
-        
+
         if (instances == null || instances.isEmpty()) {
             throw new RuntimeException("No instances configured for model: " + modelName);
         }
 
-        // 1. 过滤出健康的 Instance (DB active + 熔断未开)
-        List<ModelInstance> healthyInstances = instances.stream()
-                .filter(ModelInstance::isHealthy)
-                .collect(Collectors.toList());
+        // 1. 按策略选出健康的 Instance (DB active + 熔断器放行)，2. 向熔断器申请调用许可 (半开状态只有少量试探许可)
+        // 并发申请时许可可能刚被别人拿走，换一个实例再试
+        BalancingStrategy.Selector selector = selection(modelName, instances).selector;
+        for (int attempt = 0; attempt < instances.size(); attempt++) {
+            ModelInstance selected = selector.select();
+            if (selected == null) {
+                break;
+            }
+            if (!excludedUrls.contains(selected.getUrl()) && selected.getBreaker().tryAcquirePermission()) {
+                return selected;
+            }
+        }
+
+        // 策略没选出可用实例 (例如高权重实例被排除、半开许可被抢光)，按顺序兜底找一个
+        for (ModelInstance instance : instances) {
+            if (!excludedUrls.contains(instance.getUrl()) && instance.isHealthy()
+                    && instance.getBreaker().tryAcquirePermission()) {
+                return instance;
+            }
+        }
 
-        if (healthyInstances.isEmpty()) {
-            // 降级策略：尝试选取一个虽然熔断但 failureCount 最少的，给一次重试机会
-            return instances.stream()
-                    .min((k1, k2) -> Integer.compare(k1.getFailureCount().get(), k2.getFailureCount().get()))
-                    .orElseThrow(() -> new RuntimeException("All instances are down for model: " + modelName));
+        // 全部熔断时快速失败，不再把流量压到故障实例上 (等待打开时长到期后半开试探)
+        throw new RuntimeException(excludedUrls.isEmpty()
+                ? "All instances are down for model: " + modelName
+                : "No other available instance for model: " + modelName);
+    }
+
+    /**
+     * 缓存刷新会产生新的实例列表对象，据此判断是否需要重建选择器；请求路径上只有一次引用比较
+     */
+    private Selection selection(String modelName, List<ModelInstance> instances) {
+        Selection selection = selections.get(modelName);
+        if (selection == null || selection.source != instances) {
+            selection = new Selection(instances, strategy.build(instances));
+            selections.put(modelName, selection);
+            log.debug("Rebuilt {} selector for model {} ({} instances)", strategy.name(), modelName, instances.size());
         }
+        return selection;
+    }
 
-        // 2. 加权轮询 (Weighted Round Robin) - 简化版
-        // 实际生产可以使用 Nginx 的平滑加权轮询算法
-        int index = Math.abs(counter.getAndIncrement() % healthyInstances.size());
-        return healthyInstances.get(index);
+    private record Selection(List<ModelInstance> source, BalancingStrategy.Selector selector) {
     }
 }
@@ -0,0 +1,90 @@
+package com.mooncell.gateway.core.balancer;
+
+import com.mooncell.gateway.core.model.ModelInstance;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 二选一 (power of two choices) + EWMA 延迟
+ * 随机取两个健康实例，选代价较低者：代价 = 首 token 时间 (TTFT) 的 EWMA x (在途请求 + 1) / 权重。
+ * 比全量扫描便宜，又能避开变慢或排队的实例，且不会像 "总选最优" 那样把流量集中到同一个实例上。
+ */
+@Component
+@RequiredArgsConstructor
+public class PowerOfTwoChoicesStrategy implements BalancingStrategy {
+
+    public static final String NAME = "p2c-ewma";
+
+    private final ResourceLockManager lockManager;
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public Selector build(List<ModelInstance> instances) {
+        return new P2cSelector(instances.toArray(new ModelInstance[0]), lockManager);
+    }
+
+    private static final class P2cSelector implements Selector {
+
+        private final ModelInstance[] instances;
+        private final int[] weights;
+        private final ResourceLockManager lockManager;
+
+        P2cSelector(ModelInstance[] instances, ResourceLockManager lockManager) {
+            this.instances = instances;
+            this.lockManager = lockManager;
+            this.weights = new int[instances.length];
+            for (int i = 0; i < instances.length; i++) {
+                weights[i] = BalancingStrategy.weightOf(instances[i]);
+            }
+        }
+
+        @Override
+        public ModelInstance select() {
+            int n = instances.length;
+            if (n == 0) {
+                return null;
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int a = nextHealthy(random.nextInt(n));
+            if (a < 0) {
+                return null;
+            }
+            if (n == 1) {
+                return instances[a];
+            }
+            // 第二个候选从 a 以外的位置开始找
+            int b = nextHealthy((a + 1 + random.nextInt(n - 1)) % n);
+            if (b == a) {
+                return instances[a];
+            }
+            return cost(b) < cost(a) ? instances[b] : instances[a];
+        }
+
+        /**
+         * 从 start 开始的第一个健康实例下标，没有则返回 -1
+         */
+        private int nextHealthy(int start) {
+            int n = instances.length;
+            for (int k = 0; k < n; k++) {
+                int i = start + k < n ? start + k : start + k - n;
+                if (instances[i].isHealthy()) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private double cost(int i) {
+            // +1 让尚无延迟样本的实例也能按在途请求数比较
+            double latency = instances[i].getTtft().ewmaMicros() + 1;
+            return latency * (lockManager.inFlight(instances[i]) + 1) / weights[i];
+        }
+    }
+}
@@ -1,21 +1,25 @@
 package com.mooncell.gateway.core.balancer;
 
 import com.mooncell.gateway.core.model.ModelInstance;
+import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Semaphore;
-import java.util.concurrent.TimeUnit;
 
+/**
+ * 实例并发控制：每个实例一个自适应并发上限 ({@link AdaptiveLimiter})，
+ * 根据实测首 token 时间和 429 / 超时自动放大或收缩，而不是固定的许可数
+ */
 @Service
+@RequiredArgsConstructor
 public class ResourceLockManager {
 
-    // URL -> Semaphore
-    private final Map<String, Semaphore> locks = new ConcurrentHashMap<>();
-    
-    // 默认每个节点最大并发 50 (实际可根据 weight 动态调整)
-    private static final int DEFAULT_PERMITS = 100;
+    private final ConcurrencyLimitProperties properties;
+
+    // URL -> Limiter
+    private final Map<String, AdaptiveLimiter> limiters = new ConcurrentHashMap<>();
 
     /**
      * 尝试锁定资源
@@ -23,14 +27,16 @@ public class ResourceLockManager {
      * @return true 如果成功锁定
      */
     public boolean tryLock(ModelInstance instance) {
-        Semaphore semaphore = locks.computeIfAbsent(instance.getUrl(), k -> new Semaphore(DEFAULT_PERMITS));
-        try {
-            // 尝试获取许可，不需要等待太久，立刻返回结果
-            return semaphore.tryAcquire(100, TimeUnit.MILLISECONDS);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            return false;
-        }
+        // 非阻塞获取许可，立刻返回结果 (不能 park 调用线程，可能位于 Event Loop 上)
+        return limiter(instance).tryAcquire();
+    }
+
+    /**
+     * 当前在途 (已占用许可) 的请求数，供负载均衡读取
+     */
+    public int inFlight(ModelInstance instance) {
+        AdaptiveLimiter limiter = limiters.get(instance.getUrl());
+        return limiter != null ? limiter.getInFlight() : 0;
     }
 
     /**
@@ -38,10 +44,41 @@ public class ResourceLockManager {
      */
     public void release(ModelInstance instance) {
         if (instance == null) return;
-        Semaphore semaphore = locks.get(instance.getUrl());
-        if (semaphore != null) {
-            semaphore.release();
+        AdaptiveLimiter limiter = limiters.get(instance.getUrl());
+        if (limiter != null) {
+            limiter.release();
         }
     }
-}
 
+    /**
+     * 请求成功 (latencyNanos 为首 token 时间)，用于调整上限
+     */
+    public void onSuccess(ModelInstance instance, long latencyNanos) {
+        limiter(instance).onSuccess(latencyNanos);
+    }
+
+    /**
+     * 请求被限流 / 超时 / 失败，收缩上限
+     */
+    public void onDropped(ModelInstance instance) {
+        limiter(instance).onDropped();
+    }
+
+    /**
+     * 每个实例的当前上限与在途请求数
+     */
+    public Map<String, Map<String, Integer>> metrics() {
+        Map<String, Map<String, Integer>> result = new LinkedHashMap<>();
+        limiters.forEach((url, limiter) -> {
+            Map<String, Integer> values = new LinkedHashMap<>();
+            values.put("limit", limiter.getLimit());
+            values.put("inFlight", limiter.getInFlight());
+            result.put(url, values);
+        });
+        return result;
+    }
+
+    private AdaptiveLimiter limiter(ModelInstance instance) {
+        return limiters.computeIfAbsent(instance.getUrl(), k -> new AdaptiveLimiter(properties));
+    }
+}
@@ -0,0 +1,64 @@
+package com.mooncell.gateway.core.balancer;
+
+import com.mooncell.gateway.core.model.ModelInstance;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 平滑加权轮询 (Nginx smooth weighted round-robin)
+ * 每次选择：所有健康实例 current += weight，选 current 最大者，再让它 current -= 健康权重总和。
+ * 权重 5:1:1 的序列为 a a b a c a a，而不是 a a a a a b c，流量在时间上更均匀。
+ */
+@Component
+public class SmoothWeightedRoundRobinStrategy implements BalancingStrategy {
+
+    public static final String NAME = "smooth-weighted";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public Selector build(List<ModelInstance> instances) {
+        return new SmoothSelector(instances.toArray(new ModelInstance[0]));
+    }
+
+    private static final class SmoothSelector implements Selector {
+
+        private final ModelInstance[] instances;
+        private final int[] weights;
+        private final int[] current;
+
+        SmoothSelector(ModelInstance[] instances) {
+            this.instances = instances;
+            this.weights = new int[instances.length];
+            this.current = new int[instances.length];
+            for (int i = 0; i < instances.length; i++) {
+                weights[i] = BalancingStrategy.weightOf(instances[i]);
+            }
+        }
+
+        @Override
+        public synchronized ModelInstance select() {
+            int total = 0;
+            int best = -1;
+            for (int i = 0; i < instances.length; i++) {
+                if (!instances[i].isHealthy()) {
+                    continue;
+                }
+                current[i] += weights[i];
+                total += weights[i];
+                if (best < 0 || current[i] > current[best]) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                return null;
+            }
+            current[best] -= total;
+            return instances[best];
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package com.mooncell.gateway.core.breaker;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+
+/**
+ * 单个实例的熔断器：CLOSED -> OPEN -> HALF_OPEN -> CLOSED / OPEN
+ * <ul>
+ *     <li>CLOSED：按滑动窗口 (次数或时间) 统计错误率与慢调用率，超过阈值即打开</li>
+ *     <li>OPEN：拒绝所有请求，打开时长按连续打开次数指数退避</li>
+ *     <li>HALF_OPEN：打开时长到期后由负载均衡发放有限个试探许可，全部成功则关闭，任一失败立即重新打开</li>
+ * </ul>
+ * 状态迁移在实例粒度的锁内完成 (临界区很短)；{@link #isCallPermitted()} 只读 volatile 字段，供选路时无锁过滤。
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final CircuitBreakerProperties properties;
+    private final SlidingWindow window;
+
+    private volatile State state = State.CLOSED;
+    private volatile long openUntil;
+    private volatile int halfOpenAvailable;
+    private int halfOpenSucceeded;
+    private int consecutiveOpens;
+
+    public CircuitBreaker(String name, CircuitBreakerProperties properties) {
+        this.name = name;
+        this.properties = properties;
+        this.window = properties.getWindowType() == CircuitBreakerProperties.WindowType.TIME
+                ? new TimeWindow(properties.getWindowSize())
+                : new CountWindow(properties.getWindowSize());
+    }
+
+    /**
+     * 当前是否可能放行 (不占用许可)，用于选路时过滤
+     */
+    public boolean isCallPermitted() {
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> System.currentTimeMillis() >= openUntil;
+            case HALF_OPEN -> halfOpenAvailable > 0;
+        };
+    }
+
+    /**
+     * 申请调用许可；返回 true 后调用方必须以 onSuccess / onError / release 之一结束
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN && System.currentTimeMillis() >= openUntil) {
+            toHalfOpen();
+        }
+        switch (state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (halfOpenAvailable > 0) {
+                    halfOpenAvailable--;
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 调用成功，responseMillis (首 token 时间) 用于判断慢调用
+     */
+    public synchronized void onSuccess(long responseMillis) {
+        boolean slow = responseMillis > properties.getSlowCallDurationMs();
+        if (state == State.HALF_OPEN) {
+            if (slow) {
+                open("slow trial call");
+            } else if (++halfOpenSucceeded >= properties.getHalfOpenPermits()) {
+                close();
+            }
+        } else if (state == State.CLOSED) {
+            window.record(false, slow);
+            evaluate();
+        }
+    }
+
+    public synchronized void onError() {
+        if (state == State.HALF_OPEN) {
+            open("trial call failed");
+        } else if (state == State.CLOSED) {
+            window.record(true, false);
+            evaluate();
+        }
+    }
+
+    /**
+     * 拿到许可但没有产生可归因于实例的结果 (客户端取消、本地限流)，归还半开许可
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN
+                && halfOpenAvailable + halfOpenSucceeded < properties.getHalfOpenPermits()) {
+            halfOpenAvailable++;
+        }
+    }
+
+    /**
+     * 心跳探测成功：打开状态下提前进入半开，由真实请求验证
+     */
+    public synchronized void onProbeSuccess() {
+        if (state == State.OPEN) {
+            toHalfOpen();
+        }
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public synchronized int getFailureRate() {
+        return window.calls() == 0 ? 0 : window.failures() * 100 / window.calls();
+    }
+
+    public synchronized int getSlowCallRate() {
+        return window.calls() == 0 ? 0 : window.slowCalls() * 100 / window.calls();
+    }
+
+    public long getOpenRemainingMs() {
+        return state == State.OPEN ? Math.max(0, openUntil - System.currentTimeMillis()) : 0;
+    }
+
+    private void evaluate() {
+        int calls = window.calls();
+        if (calls < properties.getMinimumCalls()) {
+            return;
+        }
+        if (window.failures() * 100 >= properties.getFailureRateThreshold() * calls) {
+            open("failure rate " + window.failures() * 100 / calls + "%");
+        } else if (window.slowCalls() * 100 >= properties.getSlowCallRateThreshold() * calls) {
+            open("slow call rate " + window.slowCalls() * 100 / calls + "%");
+        }
+    }
+
+    private void open(String reason) {
+        double backoff = Math.pow(properties.getBackoffMultiplier(), consecutiveOpens);
+        long duration = (long) Math.min(properties.getMaxOpenDurationMs(), properties.getOpenDurationMs() * backoff);
+        consecutiveOpens++;
+        openUntil = System.currentTimeMillis() + duration;
+        state = State.OPEN;
+        window.reset();
+        log.warn("Circuit breaker {} opened for {}ms: {}", name, duration, reason);
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        consecutiveOpens = 0;
+        window.reset();
+        log.info("Circuit breaker {} closed", name);
+    }
+
+    private void toHalfOpen() {
+        halfOpenAvailable = properties.getHalfOpenPermits();
+        halfOpenSucceeded = 0;
+        state = State.HALF_OPEN;
+        log.info("Circuit breaker {} half-open", name);
+    }
+
+    private interface SlidingWindow {
+        void record(boolean failure, boolean slow);
+
+        int calls();
+
+        int failures();
+
+        int slowCalls();
+
+        void reset();
+    }
+
+    /**
+     * 最近 N 次调用 (环形数组)
+     */
+    private static final class CountWindow implements SlidingWindow {
+        private static final byte FAILURE = 1;
+        private static final byte SLOW = 2;
+
+        private final byte[] outcomes;
+        private int next;
+        private int calls;
+        private int failures;
+        private int slowCalls;
+
+        CountWindow(int size) {
+            this.outcomes = new byte[Math.max(1, size)];
+        }
+
+        @Override
+        public void record(boolean failure, boolean slow) {
+            if (calls == outcomes.length) {
+                byte evicted = outcomes[next];
+                failures -= evicted & FAILURE;
+                slowCalls -= (evicted & SLOW) >> 1;
+            } else {
+                calls++;
+            }
+            outcomes[next] = (byte) ((failure ? FAILURE : 0) | (slow ? SLOW : 0));
+            failures += failure ? 1 : 0;
+            slowCalls += slow ? 1 : 0;
+            next = (next + 1) % outcomes.length;
+        }
+
+        @Override
+        public int calls() {
+            return calls;
+        }
+
+        @Override
+        public int failures() {
+            return failures;
+        }
+
+        @Override
+        public int slowCalls() {
+            return slowCalls;
+        }
+
+        @Override
+        public void reset() {
+            next = 0;
+            calls = 0;
+            failures = 0;
+            slowCalls = 0;
+        }
+    }
+
+    /**
+     * 最近 N 秒 (每秒一个桶，过期的桶在访问时清零)
+     */
+    private static final class TimeWindow implements SlidingWindow {
+        private final long[] seconds;
+        private final int[] calls;
+        private final int[] failures;
+        private final int[] slowCalls;
+
+        TimeWindow(int size) {
+            int buckets = Math.max(1, size);
+            this.seconds = new long[buckets];
+            this.calls = new int[buckets];
+            this.failures = new int[buckets];
+            this.slowCalls = new int[buckets];
+        }
+
+        @Override
+        public void record(boolean failure, boolean slow) {
+            long now = System.currentTimeMillis() / 1000;
+            int bucket = (int) (now % seconds.length);
+            if (seconds[bucket] != now) {
+                seconds[bucket] = now;
+                calls[bucket] = 0;
+                failures[bucket] = 0;
+                slowCalls[bucket] = 0;
+            }
+            calls[bucket]++;
+            failures[bucket] += failure ? 1 : 0;
+            slowCalls[bucket] += slow ? 1 : 0;
+        }
+
+        @Override
+        public int calls() {
+            return sum(calls);
+        }
+
+        @Override
+        public int failures() {
+            return sum(failures);
+        }
+
+        @Override
+        public int slowCalls() {
+            return sum(slowCalls);
+        }
+
+        private int sum(int[] counts) {
+            long oldest = System.currentTimeMillis() / 1000 - seconds.length;
+            int total = 0;
+            for (int i = 0; i < seconds.length; i++) {
+                if (seconds[i] > oldest) {
+                    total += counts[i];
+                }
+            }
+            return total;
+        }
+
+        @Override
+        public void reset() {
+            Arrays.fill(seconds, 0);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.mooncell.gateway.core.breaker;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 实例熔断器配置 (mooncell.breaker.*)
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "mooncell.breaker")
+public class CircuitBreakerProperties {
+
+    // 滑动窗口类型：COUNT (最近 N 次调用) / TIME (最近 N 秒)
+    private WindowType windowType = WindowType.COUNT;
+
+    // 窗口大小：COUNT 为调用次数，TIME 为秒数
+    private int windowSize = 20;
+
+    // 窗口内调用数达到此值才计算错误率，避免少量样本误判
+    private int minimumCalls = 10;
+
+    // 错误率阈值 (%)
+    private int failureRateThreshold = 50;
+
+    // 慢调用率阈值 (%)
+    private int slowCallRateThreshold = 80;
+
+    // 首 token 超过此时间 (毫秒) 视为慢调用
+    private long slowCallDurationMs = 10000;
+
+    // 首次打开的时长 (毫秒)，连续打开时按倍数退避
+    private long openDurationMs = 5000;
+
+    private double backoffMultiplier = 2.0;
+
+    private long maxOpenDurationMs = 120000;
+
+    // 半开状态允许的试探请求数，全部成功才关闭
+    private int halfOpenPermits = 3;
+
+    public enum WindowType {
+        COUNT, TIME
+    }
+}
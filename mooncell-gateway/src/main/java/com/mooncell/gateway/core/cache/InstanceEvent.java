@@ -0,0 +1,21 @@
+package com.mooncell.gateway.core.cache;
+
+import com.mooncell.gateway.core.model.ModelInstance;
+
+/**
+ * 实例配置变更事件：管理操作写库成功后交给 {@link ModelCacheService#apply(InstanceEvent)}，增量更新注册表
+ */
+public sealed interface InstanceEvent {
+
+    /**
+     * 新注册的实例 (已写库，带自增 id 与服务商名称)；URL 已存在时替换
+     */
+    record Added(ModelInstance instance) implements InstanceEvent {
+    }
+
+    record StatusChanged(Long id, boolean active) implements InstanceEvent {
+    }
+
+    record WeightChanged(Long id, int weight) implements InstanceEvent {
+    }
+}
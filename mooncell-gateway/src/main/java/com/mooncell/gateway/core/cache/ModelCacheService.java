@@ -1,92 +1,171 @@
 package com.mooncell.gateway.core.cache;
 
-import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.mooncell.gateway.core.breaker.CircuitBreaker;
+import com.mooncell.gateway.core.breaker.CircuitBreakerProperties;
 import com.mooncell.gateway.core.dao.ModelInstanceMapper;
+import com.mooncell.gateway.core.model.LatencyTracker;
 import com.mooncell.gateway.core.model.ModelInstance;
+import com.mooncell.gateway.core.upstream.UpstreamClientRegistry;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
-import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
+/**
+ * 实例注册表：启动时 findAll 全量加载一次，之后由管理操作产生的 {@link InstanceEvent} 增量更新
+ * 每次变更发布一份新的不可变快照 (Model -> 不可变实例列表)，读路径只有一次 volatile 读；
+ * 变更在写锁内串行应用 (写时复制，只复制受影响模型的列表)，负载均衡据列表引用变化重建选择器
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class ModelCacheService {
 
     private final ModelInstanceMapper modelMapper;
+    private final UpstreamClientRegistry clientRegistry;
+    private final CircuitBreakerProperties breakerProperties;
+
+    // 当前快照：ModelName -> List<Instances>，整体替换、从不原地修改
+    private volatile Map<String, List<ModelInstance>> snapshot = Map.of();
+    private final Object writeLock = new Object();
 
-    // 核心缓存：ModelName -> List<Instances>
-    private LoadingCache<String, List<ModelInstance>> cache;
-    
     // 运行时状态保持器 (URL -> State)
-    // 防止缓存刷新导致熔断状态丢失
+    // 防止全量重载导致熔断状态丢失
     private final Map<String, InstanceRuntimeState> runtimeStates = new ConcurrentHashMap<>();
 
     @PostConstruct
     public void init() {
-        // 初始化 Caffeine 缓存
-        // refreshAfterWrite: 自动异步刷新，不会阻塞读请求（除非是第一次加载）
-        cache = Caffeine.newBuilder()
-                .maximumSize(1000)
-                .refreshAfterWrite(1, TimeUnit.MINUTES) // 每分钟自动从 DB 同步一次
-                .build(this::loadFromDb); // 传入 Callable (Loader)
+        reload();
+    }
+
+    /**
+     * 从 DB 全量加载 (启动时，或 DB 被直接修改后由管理接口触发)
+     */
+    public void reload() {
+        List<ModelInstance> all;
+        synchronized (writeLock) {
+            // 在写锁内读库，避免覆盖并发管理操作刚应用的变更
+            all = modelMapper.findAll();
+            Map<String, List<ModelInstance>> grouped = new HashMap<>();
+            for (ModelInstance instance : all) {
+                injectRuntimeState(instance);
+                grouped.computeIfAbsent(instance.getModelName(), k -> new ArrayList<>()).add(instance);
+            }
+            Map<String, List<ModelInstance>> next = new HashMap<>();
+            grouped.forEach((model, instances) -> next.put(model, List.copyOf(instances)));
+            for (String model : snapshot.keySet()) {
+                next.putIfAbsent(model, List.of());
+            }
+            snapshot = Map.copyOf(next);
+            // 通知客户端注册表，释放不再被引用的上游连接池
+            snapshot.forEach(clientRegistry::onInstancesLoaded);
+        }
+        log.info("Loaded {} model instances for {} models", all.size(), snapshot.size());
     }
 
     /**
-     * CacheLoader 的实现：从 DB 加载数据，并注入运行时状态
+     * 写库并应用对应的变更事件：二者在同一把写锁内完成，并发的管理操作在 DB 与注册表中的顺序一致
+     * @param write 写库操作，返回影响行数，为 0 时不应用事件
+     * @param event 写库成功后的变更事件 (例如需要写库生成的 id)
+     * @return write 的影响行数
      */
-    private List<ModelInstance> loadFromDb(String modelName) {
-        log.debug("Loading model instances from DB for: {}", modelName);
-        List<ModelInstance> instances = modelMapper.findByModelName(modelName);
-        
-        // 注入运行时状态
-        instances.forEach(this::injectRuntimeState);
-        return instances;
+    public int apply(IntSupplier write, Supplier<InstanceEvent> event) {
+        synchronized (writeLock) {
+            int rows = write.getAsInt();
+            if (rows > 0) {
+                apply(event.get());
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * 应用一条变更事件 (调用方已写库)，返回后新快照即对所有读者可见
+     */
+    public void apply(InstanceEvent event) {
+        synchronized (writeLock) {
+            if (event instanceof InstanceEvent.Added added) {
+                ModelInstance instance = added.instance();
+                injectRuntimeState(instance);
+                List<ModelInstance> instances = new ArrayList<>(snapshot.getOrDefault(instance.getModelName(), List.of()));
+                instances.removeIf(existing -> existing.getUrl().equals(instance.getUrl()));
+                instances.add(instance);
+                publish(instance.getModelName(), instances);
+                // 不输出整个实例 (含 API Key)
+                log.info("Instance {} registered for model {}", instance.getUrl(), instance.getModelName());
+            } else if (event instanceof InstanceEvent.StatusChanged changed) {
+                replace(changed.id(), existing -> existing.toBuilder().isActive(changed.active()).build());
+                log.info("Applied instance event: {}", event);
+            } else if (event instanceof InstanceEvent.WeightChanged changed) {
+                replace(changed.id(), existing -> existing.toBuilder().weight(changed.weight()).build());
+                log.info("Applied instance event: {}", event);
+            }
+        }
+    }
+
+    /**
+     * 按 id 替换实例：复制出新对象 (运行时状态对象共享引用)，旧对象仍被在途请求安全持有
+     */
+    private void replace(Long id, UnaryOperator<ModelInstance> change) {
+        for (Map.Entry<String, List<ModelInstance>> entry : snapshot.entrySet()) {
+            List<ModelInstance> instances = entry.getValue();
+            for (int i = 0; i < instances.size(); i++) {
+                if (id.equals(instances.get(i).getId())) {
+                    List<ModelInstance> next = new ArrayList<>(instances);
+                    next.set(i, change.apply(instances.get(i)));
+                    publish(entry.getKey(), next);
+                    return;
+                }
+            }
+        }
+        log.warn("Instance {} not found in registry", id);
+    }
+
+    private void publish(String modelName, List<ModelInstance> instances) {
+        List<ModelInstance> frozen = List.copyOf(instances);
+        Map<String, List<ModelInstance>> next = new HashMap<>(snapshot);
+        next.put(modelName, frozen);
+        snapshot = Map.copyOf(next);
+        clientRegistry.onInstancesLoaded(modelName, frozen);
     }
 
     /**
      * 将运行时状态注入到新加载的 POJO 中
      */
     private void injectRuntimeState(ModelInstance instance) {
-        InstanceRuntimeState state = runtimeStates.computeIfAbsent(instance.getUrl(), k -> new InstanceRuntimeState());
+        InstanceRuntimeState state = runtimeStates.computeIfAbsent(instance.getUrl(),
+                url -> new InstanceRuntimeState(new CircuitBreaker(url, breakerProperties)));
         instance.setFailureCount(state.failureCount);
         instance.setRequestCount(state.requestCount);
         instance.setTotalLatency(state.totalLatency);
+        instance.setTtft(state.ttft);
+        instance.setInterTokenGap(state.interTokenGap);
+        instance.setStreamDuration(state.streamDuration);
         instance.setLastUsedTime(state.lastUsedTime);
         instance.setLastFailureTime(state.lastFailureTime);
-        // 注意：circuitOpen 是一个 volatile 状态，这里我们简单处理，
-        // 也可以选择不持久化熔断状态，让其重新探测
-        instance.setCircuitOpen(state.circuitOpen); 
+        instance.setBreaker(state.breaker);
     }
     
     /**
-     * 对外暴露的获取接口
+     * 对外暴露的获取接口 (不可变列表，未配置的模型返回空列表)
      */
     public List<ModelInstance> getInstances(String modelName) {
-        return cache.get(modelName);
+        return modelName == null ? List.of() : snapshot.getOrDefault(modelName, List.of());
     }
 
-    /**
-     * 强制刷新缓存 (当 Admin API 更新配置时调用)
-     * "刷新中断队列" 的效果通过 cache.refresh 实现，它会异步加载新值，
-     * 旧值在加载完成前依然可用，实现了 Copy-On-Write 的效果，不会阻塞。
-     */
-    public void refresh(String modelName) {
-        log.info("Refreshing cache for model: {}", modelName);
-        cache.refresh(modelName);
-    }
-    
     public Map<String, List<ModelInstance>> getAllCached() {
-        return cache.asMap();
+        return snapshot;
     }
 
     // 内部类：保存运行时状态
@@ -94,9 +173,16 @@ public class ModelCacheService {
         AtomicInteger failureCount = new AtomicInteger(0);
         AtomicInteger requestCount = new AtomicInteger(0);
         AtomicLong totalLatency = new AtomicLong(0);
+        LatencyTracker ttft = new LatencyTracker();
+        LatencyTracker interTokenGap = new LatencyTracker();
+        LatencyTracker streamDuration = new LatencyTracker();
         long lastUsedTime = System.currentTimeMillis();
         long lastFailureTime = 0;
-        volatile boolean circuitOpen = false;
+        final CircuitBreaker breaker;
+
+        InstanceRuntimeState(CircuitBreaker breaker) {
+            this.breaker = breaker;
+        }
     }
     
     // 当业务层更新了 ModelInstance 的状态时，同步更新 RuntimeMap
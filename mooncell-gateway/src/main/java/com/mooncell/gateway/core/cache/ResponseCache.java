@@ -0,0 +1,262 @@
+package com.mooncell.gateway.core.cache;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mooncell.gateway.api.ChatRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 确定性请求 (temperature = 0) 的响应缓存：
+ * <ul>
+ *     <li>Key 为请求体的规范化哈希 (各层字段按名排序、忽略 null 与 requestId / idempotencyKey 等网关字段)</li>
+ *     <li>Value 为上游 SSE chunk 原样字节 (保留原始分帧)，命中时直接重放，不建任务、不访问上游</li>
+ *     <li>同一 Key 的并发请求合并：第一个请求 (leader) 正常执行，其余请求先重放 leader 已输出的部分再接收实时输出；
+ *     已输出超过 max-entry-bytes 后不再保留 (也不再接受新的合并请求，它们各自执行)</li>
+ * </ul>
+ * 按响应字节数加权淘汰，写入后 TTL 过期。
+ */
+@Slf4j
+@Service
+public class ResponseCache {
+
+    private final ResponseCacheProperties properties;
+    // 规范化序列化：Map 按 Key 排序、忽略 null
+    private final ObjectMapper canonicalMapper;
+
+    private final Cache<String, List<byte[]>> cache;
+    // 执行中的 leader：Key -> 实时输出
+    private final Map<String, Inflight> inflight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public ResponseCache(ResponseCacheProperties properties, ObjectMapper objectMapper) {
+        this.properties = properties;
+        this.canonicalMapper = objectMapper.copy()
+                .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true)
+                .setDefaultPropertyInclusion(JsonInclude.Value.construct(JsonInclude.Include.NON_NULL, JsonInclude.Include.NON_NULL));
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaxBytes())
+                .weigher((String key, List<byte[]> chunks) -> weight(chunks))
+                .expireAfterWrite(properties.getTtlMs(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * 可缓存请求的 Key，不可缓存 (未开启、temperature 非 0、模型不在名单内) 时返回 null
+     */
+    public String keyOf(ChatRequest request) {
+        if (!properties.isEnabled()
+                || request.getTemperature() == null || request.getTemperature() != 0
+                || (!properties.getModels().isEmpty() && !properties.getModels().contains(request.getModel()))) {
+            return null;
+        }
+        try {
+            // 只有可缓存的请求才完整解析请求体
+            @SuppressWarnings("unchecked")
+            Map<String, Object> fields = canonicalMapper.readValue(request.getBody(), LinkedHashMap.class);
+            // 每次请求都不同、且不影响上游输出的字段
+            fields.remove("requestId");
+            fields.remove("idempotencyKey");
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(canonicalMapper.writeValueAsBytes(fields));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException | IOException e) {
+            log.warn("Failed to compute response cache key: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 命中缓存或有相同请求正在执行时返回共享的 SSE 字节流；否则登记调用方为 leader 并返回 null，
+     * leader 必须以 {@link #complete} / {@link #fail} / {@link #abandon} 之一结束
+     */
+    public Flux<DataBuffer> join(String key) {
+        List<byte[]> cached = cache.getIfPresent(key);
+        if (cached != null) {
+            hits.increment();
+            return Flux.fromIterable(cached).map(DefaultDataBufferFactory.sharedInstance::wrap);
+        }
+        Inflight created = new Inflight();
+        Inflight existing = inflight.putIfAbsent(key, created);
+        if (existing == null) {
+            misses.increment();
+            return null;
+        }
+        coalesced.increment();
+        return existing.follow().map(DefaultDataBufferFactory.sharedInstance::wrap);
+    }
+
+    /**
+     * leader 的上游 chunk (在交给 StreamBridge 之前调用，复制字节，不改变读位置)
+     */
+    public void append(String key, DataBuffer chunk) {
+        Inflight leader = inflight.get(key);
+        if (leader == null) {
+            return;
+        }
+        byte[] bytes = new byte[chunk.readableByteCount()];
+        chunk.toByteBuffer(chunk.readPosition(), ByteBuffer.wrap(bytes), 0, bytes.length);
+        leader.append(bytes, properties.getMaxEntryBytes());
+    }
+
+    /**
+     * leader 的上游流正常结束：写入缓存 (未超过单条上限时)，通知合并的请求结束
+     */
+    public void complete(String key) {
+        Inflight leader = inflight.remove(key);
+        if (leader == null) {
+            return;
+        }
+        List<byte[]> chunks = leader.terminate(null);
+        if (chunks != null) {
+            cache.put(key, chunks);
+        }
+    }
+
+    /**
+     * leader 的上游流失败：不缓存，合并的请求以同样的错误结束
+     */
+    public void fail(String key, Throwable error) {
+        Inflight leader = inflight.remove(key);
+        if (leader != null) {
+            leader.terminate(error);
+        }
+    }
+
+    /**
+     * leader 没有产生任务 (提交失败、幂等命中已有任务)，或 leader 自己的客户端断开 / 停机取消：
+     * 不是请求本身的问题，合并的请求收到 {@link AbandonedException} 后自行重新提交
+     */
+    public void abandon(String key) {
+        fail(key, new AbandonedException());
+    }
+
+    public Map<String, Long> metrics() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        values.put("entries", cache.estimatedSize());
+        values.put("hits", hits.sum());
+        values.put("coalesced", coalesced.sum());
+        values.put("misses", misses.sum());
+        values.put("inflight", (long) inflight.size());
+        return values;
+    }
+
+    private static int weight(List<byte[]> chunks) {
+        long bytes = 0;
+        for (byte[] chunk : chunks) {
+            bytes += chunk.length;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+
+    /**
+     * 执行中的 leader：已输出的 chunk (对后加入的合并请求重放，结束后写入缓存) + 已加入的合并请求
+     * 已输出的 chunk 最多保留 max-entry-bytes，超过后丢弃，已加入的合并请求只继续接收实时输出
+     */
+    private static final class Inflight {
+        private final List<FluxSink<byte[]>> followers = new CopyOnWriteArrayList<>();
+        private List<byte[]> chunks = new ArrayList<>();
+        private long bytes;
+        private boolean terminated;
+        private Throwable error;
+
+        synchronized void append(byte[] chunk, int maxEntryBytes) {
+            followers.forEach(follower -> follower.next(chunk));
+            if (chunks == null) {
+                return;
+            }
+            bytes += chunk.length;
+            if (bytes > maxEntryBytes) {
+                // 超过单条上限：不再缓存，也无法再完整重放
+                chunks = null;
+            } else {
+                chunks.add(chunk);
+            }
+        }
+
+        /**
+         * 结束 leader，通知已加入的合并请求；返回可写入缓存的 chunk (超过上限时为 null)
+         */
+        synchronized List<byte[]> terminate(Throwable error) {
+            terminated = true;
+            this.error = error;
+            for (FluxSink<byte[]> follower : followers) {
+                if (error == null) {
+                    follower.complete();
+                } else {
+                    follower.error(error);
+                }
+            }
+            followers.clear();
+            return chunks;
+        }
+
+        Flux<byte[]> follow() {
+            return Flux.create(follower -> {
+                synchronized (this) {
+                    if (chunks == null) {
+                        // 已输出的部分没有保留，无法从头重放：自行执行
+                        follower.error(new NotReplayableException());
+                        return;
+                    }
+                    chunks.forEach(follower::next);
+                    if (terminated) {
+                        if (error == null) {
+                            follower.complete();
+                        } else {
+                            follower.error(error);
+                        }
+                        return;
+                    }
+                    followers.add(follower);
+                }
+                follower.onDispose(() -> followers.remove(follower));
+            });
+        }
+    }
+
+    /**
+     * 合并的 leader 没有执行 (例如被限流、队列满)，跟随者应自行提交
+     */
+    public static class AbandonedException extends RuntimeException {
+        public AbandonedException() {
+            this("Coalesced request abandoned by leader");
+        }
+
+        AbandonedException(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    /**
+     * leader 的输出超过 max-entry-bytes，无法重放给后加入的请求：跟随者应绕过缓存自行提交
+     */
+    public static class NotReplayableException extends AbandonedException {
+        public NotReplayableException() {
+            super("Coalesced leader output too large to replay");
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.mooncell.gateway.core.cache;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 确定性请求 (temperature = 0) 的响应缓存配置 (mooncell.response-cache.*)
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "mooncell.response-cache")
+public class ResponseCacheProperties {
+
+    // 默认关闭，需显式开启
+    private boolean enabled = false;
+
+    // 只缓存这些模型，为空表示所有模型
+    private Set<String> models = new HashSet<>();
+
+    // 缓存总字节数上限 (按响应字节数加权淘汰)
+    private long maxBytes = 64 * 1024 * 1024;
+
+    // 单个响应超过此大小不缓存
+    private int maxEntryBytes = 1024 * 1024;
+
+    // 写入后多久过期 (毫秒)
+    private long ttlMs = 600000;
+}
@@ -0,0 +1,95 @@
+package com.mooncell.gateway.core.dao;
+
+import org.apache.ibatis.type.BaseTypeHandler;
+import org.apache.ibatis.type.JdbcType;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 请求体字节的压缩存储 (用于 chat_task.request_json)：超过阈值的请求体 deflate 后以 "deflate:" + Base64 写入原 TEXT 列，
+ * 其余按 UTF-8 文本原样写入；读取时按前缀识别，未压缩的旧数据原样返回，无需迁移
+ */
+public class CompressedTextTypeHandler extends BaseTypeHandler<byte[]> {
+
+    static final String PREFIX = "deflate:";
+    // 小请求压缩收益低于 Base64 的膨胀与 CPU 开销
+    static final int MIN_COMPRESS_BYTES = 512;
+
+    @Override
+    public void setNonNullParameter(PreparedStatement ps, int i, byte[] parameter, JdbcType jdbcType) throws SQLException {
+        ps.setString(i, compress(parameter));
+    }
+
+    @Override
+    public byte[] getNullableResult(ResultSet rs, String columnName) throws SQLException {
+        return decompress(rs.getString(columnName));
+    }
+
+    @Override
+    public byte[] getNullableResult(ResultSet rs, int columnIndex) throws SQLException {
+        return decompress(rs.getString(columnIndex));
+    }
+
+    @Override
+    public byte[] getNullableResult(CallableStatement cs, int columnIndex) throws SQLException {
+        return decompress(cs.getString(columnIndex));
+    }
+
+    static String compress(byte[] input) {
+        if (input.length < MIN_COMPRESS_BYTES) {
+            return new String(input, StandardCharsets.UTF_8);
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 2);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            String encoded = PREFIX + Base64.getEncoder().encodeToString(out.toByteArray());
+            // 不可压缩的内容 (例如已是 Base64 的图片) 保持原样
+            return encoded.length() < input.length ? encoded : new String(input, StandardCharsets.UTF_8);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static byte[] decompress(String stored) throws SQLException {
+        if (stored == null) {
+            return null;
+        }
+        if (!stored.startsWith(PREFIX)) {
+            return stored.getBytes(StandardCharsets.UTF_8);
+        }
+        byte[] input = Base64.getDecoder().decode(stored.substring(PREFIX.length()));
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length * 4);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new SQLException("Truncated compressed text");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new SQLException("Corrupted compressed text", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
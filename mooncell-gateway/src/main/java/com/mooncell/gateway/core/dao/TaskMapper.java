@@ -2,22 +2,118 @@ package com.mooncell.gateway.core.dao;
 
 import com.mooncell.gateway.core.task.ChatTask;
 import org.apache.ibatis.annotations.*;
+
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Mapper
 public interface TaskMapper {
 
-    @Insert("INSERT INTO chat_task (id, idempotency_key, model, request_json, status, created_at) VALUES (#{id}, #{idempotencyKey}, #{requestJson}, #{status}, CURRENT_TIMESTAMP)")
+    // 归档/清理只处理终态任务
+    String TERMINAL = "('COMPLETED', 'FAILED', 'CANCELLED')";
+
+    // 请求体原样写入 request_json，超过阈值时压缩存储
+    @Insert("INSERT INTO chat_task (id, idempotency_key, model, request_json, status, priority, tenant, created_at) VALUES (#{id}, #{idempotencyKey}, #{model}, #{requestBody,typeHandler=com.mooncell.gateway.core.dao.CompressedTextTypeHandler}, #{status}, #{priority}, #{tenant}, CURRENT_TIMESTAMP)")
     void insert(ChatTask task);
 
-    // CAS 更新：只有当前状态匹配时才更新
-    @Update("UPDATE chat_task SET status = #{newStatus}, updated_at = CURRENT_TIMESTAMP WHERE id = #{id} AND status = #{expectStatus}")
+    // 组提交：一条多行 INSERT 写入整批任务
+    @Insert("""
+        <script>
+        INSERT INTO chat_task (id, idempotency_key, model, request_json, status, priority, tenant, created_at) VALUES
+        <foreach collection="tasks" item="t" separator=",">
+            (#{t.id}, #{t.idempotencyKey}, #{t.model}, #{t.requestBody,typeHandler=com.mooncell.gateway.core.dao.CompressedTextTypeHandler}, #{t.status}, #{t.priority}, #{t.tenant}, CURRENT_TIMESTAMP)
+        </foreach>
+        </script>
+    """)
+    int insertBatch(@Param("tasks") List<ChatTask> tasks);
+
+    // CAS 更新：只有当前状态匹配时才更新 (同时刷新租约心跳，抢占即开始计时)
+    @Update("UPDATE chat_task SET status = #{newStatus}, updated_at = CURRENT_TIMESTAMP, heartbeat_at = CURRENT_TIMESTAMP WHERE id = #{id} AND status = #{expectStatus}")
     int compareAndSetStatus(@Param("id") String id, @Param("expectStatus") String expectStatus, @Param("newStatus") String newStatus);
 
-    // 幂等查询
-    @Select("SELECT * FROM chat_task WHERE idempotency_key = #{key}")
+    // 故障转移次数
+    @Update("UPDATE chat_task SET retry_count = retry_count + 1, updated_at = CURRENT_TIMESTAMP WHERE id = #{id}")
+    int incrementRetryCount(@Param("id") String id);
+
+    // 幂等查询 (只需要 id，不读 request_json)
+    @Select("SELECT id, status FROM chat_task WHERE idempotency_key = #{key}")
     ChatTask findByIdempotencyKey(String key);
 
-    @Select("SELECT * FROM chat_task WHERE status = 'PENDING'")
-    List<ChatTask> findPendingTasks();
+    // 幂等索引预热：最近的 幂等键 -> 任务 id
+    @Select("SELECT id, idempotency_key FROM chat_task WHERE idempotency_key IS NOT NULL ORDER BY created_at DESC LIMIT #{limit}")
+    List<ChatTask> findRecentIdempotencyKeys(@Param("limit") int limit);
+
+    @Select("SELECT CURRENT_TIMESTAMP")
+    LocalDateTime now();
+
+    // 恢复：按 (created_at, id) 游标分页，只扫描 before 之前提交的任务 (之后的任务由提交流程自行入队)
+    @Select("""
+        SELECT id, idempotency_key, model, request_json, status, priority, tenant, created_at FROM chat_task
+        WHERE status = 'PENDING' AND created_at < #{before}
+          AND (created_at > #{afterCreated} OR (created_at = #{afterCreated} AND id > #{afterId}))
+        ORDER BY created_at, id LIMIT #{limit}
+    """)
+    @Results(id = "chatTask", value = {
+            @Result(column = "request_json", property = "requestBody", typeHandler = CompressedTextTypeHandler.class)
+    })
+    List<ChatTask> findPendingPage(@Param("before") LocalDateTime before,
+                                   @Param("afterCreated") LocalDateTime afterCreated,
+                                   @Param("afterId") String afterId,
+                                   @Param("limit") int limit);
+
+    @Select("""
+        <script>
+        SELECT id, idempotency_key, model, request_json, status, priority, tenant, created_at FROM chat_task
+        WHERE status = 'PENDING' AND id IN
+        <foreach collection="ids" item="id" open="(" separator="," close=")">#{id}</foreach>
+        ORDER BY created_at, id
+        </script>
+    """)
+    @ResultMap("chatTask")
+    List<ChatTask> findPendingByIds(@Param("ids") List<String> ids);
+
+    // --- 租约：执行中的任务定期刷新心跳，心跳过期的 RUNNING 任务 (进程崩溃或卡死) 被重新放回 PENDING ---
+
+    @Update("""
+        <script>
+        UPDATE chat_task SET heartbeat_at = CURRENT_TIMESTAMP WHERE status = 'RUNNING' AND id IN
+        <foreach collection="ids" item="id" open="(" separator="," close=")">#{id}</foreach>
+        </script>
+    """)
+    int heartbeat(@Param("ids") List<String> ids);
+
+    // heartbeat_at 为空：升级前遗留的 RUNNING 任务；按 id 游标分页 (跳过的任务不会被重复扫描)
+    @Select("SELECT id FROM chat_task WHERE status = 'RUNNING' AND (heartbeat_at IS NULL OR heartbeat_at < #{cutoff}) AND id > #{afterId} ORDER BY id LIMIT #{limit}")
+    List<String> findStaleRunningIds(@Param("cutoff") LocalDateTime cutoff, @Param("afterId") String afterId, @Param("limit") int limit);
+
+    // 条件回收：期间刷新过心跳则不回收
+    @Update("UPDATE chat_task SET status = 'PENDING', retry_count = retry_count + 1, updated_at = CURRENT_TIMESTAMP WHERE id = #{id} AND status = 'RUNNING' AND (heartbeat_at IS NULL OR heartbeat_at < #{cutoff})")
+    int reclaim(@Param("id") String id, @Param("cutoff") LocalDateTime cutoff);
+
+    // --- 生命周期：热表只保留执行中与近期的任务，过期的终态任务归档或删除 (每次有限批量) ---
+
+    @Select("SELECT id FROM chat_task WHERE status IN " + TERMINAL + " AND updated_at < #{cutoff} ORDER BY updated_at LIMIT #{limit}")
+    List<String> findExpiredIds(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+
+    // request_json 按存储形式 (可能已压缩) 原样搬运
+    @Insert("""
+        <script>
+        INSERT INTO chat_task_archive (id, idempotency_key, model, request_json, status, retry_count, priority, tenant, created_at, updated_at)
+        SELECT id, idempotency_key, model, request_json, status, retry_count, priority, tenant, created_at, updated_at
+        FROM chat_task WHERE id IN
+        <foreach collection="ids" item="id" open="(" separator="," close=")">#{id}</foreach>
+        </script>
+    """)
+    int archiveByIds(@Param("ids") List<String> ids);
+
+    @Delete("""
+        <script>
+        DELETE FROM chat_task WHERE id IN
+        <foreach collection="ids" item="id" open="(" separator="," close=")">#{id}</foreach>
+        </script>
+    """)
+    int deleteByIds(@Param("ids") List<String> ids);
+
+    @Delete("DELETE FROM chat_task_archive WHERE id IN (SELECT id FROM chat_task_archive WHERE archived_at < #{cutoff} ORDER BY archived_at LIMIT #{limit})")
+    int purgeArchive(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
 }
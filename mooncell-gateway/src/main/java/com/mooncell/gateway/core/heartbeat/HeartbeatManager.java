@@ -1,80 +1,204 @@
 package com.mooncell.gateway.core.heartbeat;
 
+import com.mooncell.gateway.core.breaker.CircuitBreaker;
 import com.mooncell.gateway.core.cache.ModelCacheService;
 import com.mooncell.gateway.core.model.ModelInstance;
+import com.mooncell.gateway.core.upstream.UpstreamClientRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
 
+/**
+ * 实例心跳：每个实例一个定时器 (哈希时间轮)，而不是定时扫描全部实例同时探测
+ * <ul>
+ *     <li>间隔自适应：熔断打开 / 探测失败时按 unhealthy-interval-ms 快速探测，健康时连续成功逐次翻倍到 max-interval-ms</li>
+ *     <li>每次间隔加随机抖动，新实例的首次探测也随机分散，避免同时发出</li>
+ *     <li>全局并发上限，超过时顺延</li>
+ *     <li>默认用 GET /models 探测 (不产生计费)，可按 Provider 改为 max_tokens=1 的对话请求</li>
+ *     <li>最近有真实请求的健康实例跳过探测</li>
+ * </ul>
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class HeartbeatManager {
 
     private final ModelCacheService cacheService;
-    private final WebClient.Builder webClientBuilder;
-
-    // 每 30 秒执行一次心跳检测
-    @Scheduled(fixedRate = 30000)
-    public void checkHealth() {
-        // 从缓存获取当前所有的配置快照
-        Map<String, List<ModelInstance>> allModels = cacheService.getAllCached();
-        
-        allModels.forEach((modelName, instances) -> {
-            instances.forEach(instance -> {
-                // 如果熔断开启，或者长时间未用，则探测
-                if (!instance.isHealthy() || (System.currentTimeMillis() - instance.getLastUsedTime() > 60000)) {
-                    performHeartbeat(instance);
-                }
-            });
-        });
+    private final UpstreamClientRegistry clientRegistry;
+    private final HeartbeatProperties properties;
+
+    // 实例 URL -> 探测状态
+    private final Map<String, ProbeState> states = new ConcurrentHashMap<>();
+    private Semaphore probes;
+    private TimingWheel wheel;
+
+    @PostConstruct
+    public void init() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        probes = new Semaphore(Math.max(1, properties.getMaxConcurrentProbes()));
+        wheel = new TimingWheel("Heartbeat-Wheel", properties.getTickMs(), properties.getWheelSize());
     }
 
-    private void performHeartbeat(ModelInstance instance) {
-        String payload = """
-            {
-                "model": "%s",
-                "messages": [{"role": "user", "content": "ping"}],
-                "max_tokens": 1
+    @PreDestroy
+    public void stop() {
+        if (wheel != null) {
+            wheel.stop();
+        }
+    }
+
+    /**
+     * 与注册表同步：新实例加入时间轮 (首次探测在一个间隔内随机分散)，已移除的实例在定时器到期时丢弃
+     */
+    @Scheduled(fixedDelayString = "${mooncell.heartbeat.reconcile-interval-ms:5000}")
+    public void reconcile() {
+        if (wheel == null) {
+            return;
+        }
+        Set<String> present = new HashSet<>();
+        for (List<ModelInstance> instances : cacheService.getAllCached().values()) {
+            for (ModelInstance instance : instances) {
+                present.add(instance.getUrl());
+                ProbeState state = states.get(instance.getUrl());
+                if (state != null) {
+                    // 权重等变更会生成新的实例对象
+                    state.instance = instance;
+                } else {
+                    ProbeState created = new ProbeState(instance, properties.getHealthyIntervalMs());
+                    states.put(instance.getUrl(), created);
+                    long first = ThreadLocalRandom.current().nextLong(Math.max(1, properties.getHealthyIntervalMs()));
+                    wheel.schedule(() -> fire(created), first);
+                }
             }
-        """.formatted(instance.getModelName());
-
-        String targetUrl = buildTargetUrl(instance);
-
-        webClientBuilder.build().post()
-                .uri(targetUrl)
-                .headers(headers -> {
-                    if ("azure".equalsIgnoreCase(instance.getProviderName())) {
-                        headers.add("api-key", instance.getApiKey());
-                    } else {
-                        headers.add("Authorization", "Bearer " + instance.getApiKey());
-                    }
-                    headers.add("Content-Type", "application/json");
-                })
-                .bodyValue(payload)
+        }
+        states.keySet().retainAll(present);
+    }
+
+    /**
+     * 定时器到期 (时间轮线程)：决定是否探测，并安排下一次
+     */
+    private void fire(ProbeState state) {
+        // 实例已移除 (或移除后重新注册，由新的定时器负责)
+        if (states.get(state.instance.getUrl()) != state) {
+            return;
+        }
+        ModelInstance instance = state.instance;
+        if (!Boolean.TRUE.equals(instance.getIsActive())) {
+            // 已下线的实例不探测，保留定时器以便重新上线后恢复
+            reschedule(state, properties.getHealthyIntervalMs());
+            return;
+        }
+        boolean healthy = instance.getBreaker().getState() == CircuitBreaker.State.CLOSED;
+        if (healthy && System.currentTimeMillis() - instance.getLastUsedTime() < properties.getIdleThresholdMs()) {
+            reschedule(state, state.interval);
+            return;
+        }
+        if (!probes.tryAcquire()) {
+            // 并发已满：短暂顺延
+            reschedule(state, properties.getUnhealthyIntervalMs());
+            return;
+        }
+        try {
+            probe(state);
+        } catch (Exception e) {
+            probes.release();
+            log.warn("Instance {} heartbeat not sent: {}", instance.getUrl(), e.getMessage());
+            reschedule(state, properties.getUnhealthyIntervalMs());
+        }
+    }
+
+    private void probe(ProbeState state) {
+        ModelInstance instance = state.instance;
+        long start = System.currentTimeMillis();
+        request(instance)
                 .retrieve()
                 .toBodilessEntity()
+                .timeout(Duration.ofMillis(properties.getTimeoutMs()))
+                .doFinally(signal -> probes.release())
                 .subscribe(
                         response -> {
-                            if (response.getStatusCode().is2xxSuccessful()) {
-                                log.info("Instance {} recovered.", instance.getUrl());
-                                // 成功，重置状态
-                                // 注意：因为引用的是 Cache 中的对象，所以这里的修改是内存态的
-                                // 只要 ModelCacheService.runtimeStates 保持引用，状态就能保留
-                                instance.recordSuccess(0);
+                            // 探测不是真实流量：不计入请求数与延迟统计，也不刷新空闲判断用的 lastUsedTime
+                            log.debug("Instance {} heartbeat ok in {}ms.", instance.getUrl(), System.currentTimeMillis() - start);
+                            // 熔断打开中则提前进入半开，由真实请求试探
+                            instance.getBreaker().onProbeSuccess();
+                            if (instance.getBreaker().getState() == CircuitBreaker.State.CLOSED) {
+                                // 连续成功：间隔翻倍
+                                state.interval = Math.min(properties.getMaxIntervalMs(), state.interval * 2);
+                                reschedule(state, state.interval);
                             } else {
-                                log.warn("Instance {} heartbeat failed: {}", instance.getUrl(), response.getStatusCode());
+                                state.interval = properties.getHealthyIntervalMs();
+                                reschedule(state, properties.getUnhealthyIntervalMs());
                             }
                         },
-                        error -> log.error("Instance {} heartbeat error: {}", instance.getUrl(), error.getMessage())
-                );
+                        error -> {
+                            log.warn("Instance {} heartbeat failed: {}", instance.getUrl(), error.getMessage());
+                            state.interval = properties.getHealthyIntervalMs();
+                            reschedule(state, properties.getUnhealthyIntervalMs());
+                        });
+    }
+
+    private WebClient.RequestHeadersSpec<?> request(ModelInstance instance) {
+        boolean azure = "azure".equalsIgnoreCase(instance.getProviderName());
+        WebClient client = clientRegistry.client(instance);
+        WebClient.RequestHeadersSpec<?> spec;
+        if (properties.probeTypeOf(instance.getProviderName()) == HeartbeatProperties.ProbeType.MODELS) {
+            spec = client.get().uri(baseUrl(instance) + "/models");
+        } else {
+            spec = client.post()
+                    .uri(buildTargetUrl(instance))
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(chatProbe(instance.getModelName()));
+        }
+        return spec.headers(headers -> {
+            if (azure) {
+                headers.add("api-key", instance.getApiKey());
+            } else {
+                headers.add(HttpHeaders.AUTHORIZATION, "Bearer " + instance.getApiKey());
+            }
+        });
+    }
+
+    // max_tokens=1 的对话探测，由 JSON 编码器序列化 (模型名可能含引号等需要转义的字符)
+    private static Map<String, Object> chatProbe(String model) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("model", model);
+        body.put("messages", List.of(Map.of("role", "user", "content", "ping")));
+        body.put("max_tokens", 1);
+        return body;
+    }
+
+    private void reschedule(ProbeState state, long delayMs) {
+        double jitter = properties.getJitter();
+        double factor = jitter > 0 ? 1 + ThreadLocalRandom.current().nextDouble(-jitter, jitter) : 1;
+        wheel.schedule(() -> fire(state), (long) (delayMs * factor));
     }
-    
+
+    // 去掉 /chat/completions 与结尾的 /，e.g. https://api.openai.com/v1
+    private String baseUrl(ModelInstance instance) {
+        String base = instance.getUrl();
+        if (base.endsWith("/chat/completions")) {
+            base = base.substring(0, base.length() - "/chat/completions".length());
+        }
+        return base.endsWith("/") ? base.substring(0, base.length() - 1) : base;
+    }
+
     private String buildTargetUrl(ModelInstance instance) {
         String base = instance.getUrl();
         if (!base.endsWith("/chat/completions") && !"azure".equalsIgnoreCase(instance.getProviderName())) {
@@ -83,4 +207,15 @@ public class HeartbeatManager {
         }
         return base;
     }
+
+    private static final class ProbeState {
+        volatile ModelInstance instance;
+        // 健康时的当前间隔 (自适应)
+        volatile long interval;
+
+        ProbeState(ModelInstance instance, long interval) {
+            this.instance = instance;
+            this.interval = interval;
+        }
+    }
 }
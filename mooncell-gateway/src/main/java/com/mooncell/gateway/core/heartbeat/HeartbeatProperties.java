@@ -0,0 +1,58 @@
+package com.mooncell.gateway.core.heartbeat;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 实例心跳探测配置 (mooncell.heartbeat.*)
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "mooncell.heartbeat")
+public class HeartbeatProperties {
+
+    private boolean enabled = true;
+
+    // 时间轮的刻度 (毫秒) 与槽数
+    private long tickMs = 500;
+    private int wheelSize = 512;
+
+    // 健康实例的基础探测间隔，连续成功后逐次翻倍，直到 max-interval-ms
+    private long healthyIntervalMs = 30000;
+    private long maxIntervalMs = 300000;
+
+    // 熔断打开 / 半开或探测失败时的探测间隔
+    private long unhealthyIntervalMs = 5000;
+
+    // 最近这段时间内有真实请求的健康实例不探测 (真实流量本身就是健康信号)
+    private long idleThresholdMs = 60000;
+
+    // 间隔的随机抖动比例 (±)，避免大量实例同时探测
+    private double jitter = 0.2;
+
+    // 同时进行的探测数上限，超过时顺延
+    private int maxConcurrentProbes = 8;
+
+    private long timeoutMs = 5000;
+
+    // 默认探测方式：MODELS (GET /models，不产生计费) / CHAT (max_tokens=1 的对话请求)
+    private ProbeType probeType = ProbeType.MODELS;
+
+    // 按 Provider 覆盖探测方式, e.g. mooncell.heartbeat.probe-types.azure=CHAT
+    private Map<String, ProbeType> probeTypes = new HashMap<>();
+
+    // 从注册表同步实例列表的间隔 (毫秒)
+    private long reconcileIntervalMs = 5000;
+
+    public ProbeType probeTypeOf(String provider) {
+        return provider == null ? probeType : probeTypes.getOrDefault(provider.toLowerCase(), probeType);
+    }
+
+    public enum ProbeType {
+        MODELS, CHAT
+    }
+}
@@ -0,0 +1,107 @@
+package com.mooncell.gateway.core.heartbeat;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 哈希时间轮：单个线程按固定刻度推进，定时任务按到期刻度散列到槽中 (超过一圈的记录剩余圈数)，
+ * 添加与到期都是 O(1)，定时器数量与实例数无关地只占用一个线程。
+ * 任务在时间轮线程上执行，必须很快返回 (探测本身是异步的)。
+ */
+@Slf4j
+class TimingWheel {
+
+    private final long tickNanos;
+    private final int mask;
+    private final List<Queue<Timeout>> slots;
+    // 其他线程添加的任务先进入这里，由时间轮线程放入槽中
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private final long startNanos;
+    private long tick;
+    private volatile boolean running = true;
+
+    TimingWheel(String name, long tickMs, int wheelSize) {
+        int size = Integer.highestOneBit(Math.max(2, wheelSize) - 1) << 1;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMs));
+        this.mask = size - 1;
+        this.slots = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            slots.add(new ArrayDeque<>());
+        }
+        this.startNanos = System.nanoTime();
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    void schedule(Runnable task, long delayMs) {
+        pending.add(new Timeout(task, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMs))));
+    }
+
+    void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            long sleepNanos = startNanos + (tick + 1) * tickNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            transferPending();
+            expire(slots.get((int) (tick & mask)));
+            tick++;
+        }
+    }
+
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            // 已过期的任务放进当前槽，本刻度执行
+            long target = Math.max(tick, (timeout.deadline - startNanos + tickNanos - 1) / tickNanos);
+            timeout.rounds = (target - tick) / slots.size();
+            slots.get((int) (target & mask)).add(timeout);
+        }
+    }
+
+    private void expire(Queue<Timeout> slot) {
+        Iterator<Timeout> it = slot.iterator();
+        while (it.hasNext()) {
+            Timeout timeout = it.next();
+            if (timeout.rounds > 0) {
+                timeout.rounds--;
+                continue;
+            }
+            it.remove();
+            try {
+                timeout.task.run();
+            } catch (Exception e) {
+                log.error("Timer task failed", e);
+            }
+        }
+    }
+
+    private static final class Timeout {
+        final Runnable task;
+        final long deadline;
+        long rounds;
+
+        Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+    }
+}
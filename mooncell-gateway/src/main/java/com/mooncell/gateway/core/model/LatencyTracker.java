@@ -0,0 +1,82 @@
+package com.mooncell.gateway.core.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一项延迟指标：EWMA (反映最近的变化，供路由使用) + 滑动窗口直方图 (分位数，供监控使用)
+ * 直方图分为当前/上一窗口两片，分位数按两片合并计算，即最近 1~2 个窗口的数据；窗口在记录时惰性轮换。
+ * 记录路径无锁 (每个窗口只有一次轮换需要加锁)。
+ */
+public class LatencyTracker {
+
+    private static final double EWMA_ALPHA = 0.2;
+    private static final long WINDOW_NANOS = 60_000_000_000L;
+
+    private final AtomicLong ewmaMicros = new AtomicLong();
+    private volatile Window current = new Window(System.nanoTime());
+    private volatile Window previous;
+
+    public void record(long nanos) {
+        long micros = nanos / 1000;
+        long prev;
+        long next;
+        do {
+            prev = ewmaMicros.get();
+            // 第一个样本直接作为初值
+            next = prev == 0 ? micros : prev + (long) (EWMA_ALPHA * (micros - prev));
+        } while (!ewmaMicros.compareAndSet(prev, next));
+        window().histogram.record(micros);
+    }
+
+    public long ewmaMicros() {
+        return ewmaMicros.get();
+    }
+
+    public double getEwmaMillis() {
+        return ewmaMicros.get() / 1000.0;
+    }
+
+    public double getP50Millis() {
+        return percentileMillis(0.50);
+    }
+
+    public double getP99Millis() {
+        return percentileMillis(0.99);
+    }
+
+    public long getCount() {
+        Window prev = previous;
+        return window().histogram.count() + (prev != null ? prev.histogram.count() : 0);
+    }
+
+    public double percentileMillis(double quantile) {
+        Window prev = previous;
+        return window().histogram.percentile(quantile, prev != null ? prev.histogram : null) / 1000.0;
+    }
+
+    private Window window() {
+        Window window = current;
+        long now = System.nanoTime();
+        if (now - window.start < WINDOW_NANOS) {
+            return window;
+        }
+        synchronized (this) {
+            // 双重检查，只有一个线程负责轮换
+            if (current == window) {
+                // 超过两个窗口没有样本时，上一窗口的数据也已过期
+                previous = now - window.start < 2 * WINDOW_NANOS ? window : null;
+                current = new Window(now);
+            }
+            return current;
+        }
+    }
+
+    private static final class Window {
+        final long start;
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        Window(long start) {
+            this.start = start;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.mooncell.gateway.core.model;
 
+import com.mooncell.gateway.core.breaker.CircuitBreaker;
+import com.mooncell.gateway.core.breaker.CircuitBreakerProperties;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -12,10 +14,11 @@ import java.util.concurrent.atomic.AtomicLong;
  * 每一个对象代表一个可用的大模型服务节点 (URL级别)
  */
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class ModelInstance {
+
     private Long id;
     private Long providerId;
     private String providerName; // 冗余字段，方便使用
@@ -35,17 +38,24 @@ public class ModelInstance {
     private transient AtomicInteger requestCount = new AtomicInteger(0);
     @Builder.Default
     private transient AtomicLong totalLatency = new AtomicLong(0);
+    // 流式延迟：首 token 时间 (TTFT)、chunk 间隔、整个流的耗时，供延迟感知的负载均衡与监控使用
+    @Builder.Default
+    private transient LatencyTracker ttft = new LatencyTracker();
+    @Builder.Default
+    private transient LatencyTracker interTokenGap = new LatencyTracker();
+    @Builder.Default
+    private transient LatencyTracker streamDuration = new LatencyTracker();
     @Builder.Default
     private transient long lastUsedTime = System.currentTimeMillis();
     @Builder.Default
     private transient long lastFailureTime = 0;
     
-    // 熔断标志 (内存态，与 isActive 结合使用)
+    // 熔断器 (由 ModelCacheService 注入，跨缓存刷新保持状态)
     @Builder.Default
-    private transient volatile boolean circuitOpen = false;
+    private transient CircuitBreaker breaker = new CircuitBreaker("unbound", new CircuitBreakerProperties());
 
+    // latency: 整个请求的耗时 (毫秒)
     public void recordSuccess(long latency) {
-        this.circuitOpen = false;
         this.failureCount.set(0);
         this.requestCount.incrementAndGet();
         this.totalLatency.addAndGet(latency);
@@ -53,16 +63,12 @@ public class ModelInstance {
     }
 
     public void recordFailure() {
-        int failures = this.failureCount.incrementAndGet();
+        this.failureCount.incrementAndGet();
         this.lastFailureTime = System.currentTimeMillis();
-        if (failures >= 3) {
-            this.circuitOpen = true;
-        }
     }
-    
-    // 判断节点是否真实可用 (DB配置开启 + 熔断器未开启)
+
+    // 判断节点是否真实可用 (DB配置开启 + 熔断器放行)
     public boolean isHealthy() {
-        return Boolean.TRUE.equals(isActive) && !circuitOpen;
+        return Boolean.TRUE.equals(isActive) && breaker.isCallPermitted();
     }
 }
-
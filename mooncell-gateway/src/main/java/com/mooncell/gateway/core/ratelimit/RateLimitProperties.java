@@ -0,0 +1,58 @@
+package com.mooncell.gateway.core.ratelimit;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 限流配置 (mooncell.ratelimit.*)，每个维度都可以限制 每分钟请求数 (rpm) 与 每分钟估算 token 数 (tpm)，0 表示不限
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "mooncell.ratelimit")
+public class RateLimitProperties {
+
+    private boolean enabled = true;
+
+    // 每个调用方 API Key 的默认限额
+    private Limit key = new Limit();
+
+    // 每个模型的默认限额
+    private Limit model = new Limit();
+
+    // 每个上游实例的默认限额 (通常对应供应商给的配额)
+    private Limit instance = new Limit();
+
+    // 按 API Key / 模型 / 实例 URL 覆盖, e.g. mooncell.ratelimit.models.gpt-4.tpm=100000
+    private Map<String, Limit> keys = new HashMap<>();
+    private Map<String, Limit> models = new HashMap<>();
+    private Map<String, Limit> instances = new HashMap<>();
+
+    // token 估算：请求体字符数 / chars-per-token + max_tokens (未指定时用 default-completion-tokens)
+    private int charsPerToken = 4;
+    private int defaultCompletionTokens = 256;
+
+    // 桶在多久无访问后回收 (毫秒)，避免 API Key 数量无限增长
+    private long idleExpireMs = 600000;
+
+    public Limit keyLimit(String apiKey) {
+        return keys.getOrDefault(apiKey, key);
+    }
+
+    public Limit modelLimit(String modelName) {
+        return models.getOrDefault(modelName, model);
+    }
+
+    public Limit instanceLimit(String url) {
+        return instances.getOrDefault(url, instance);
+    }
+
+    @Data
+    public static class Limit {
+        private long rpm;
+        private long tpm;
+    }
+}
@@ -0,0 +1,134 @@
+package com.mooncell.gateway.core.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内限流：按 调用方 API Key / 模型 / 上游实例 三个维度，各自的请求数 (rpm) 与估算 token 数 (tpm) 令牌桶
+ * <ul>
+ *     <li>API Key 与模型在 {@code TaskManager.submit} 最开始检查，被拒绝的请求不产生任何 DB 写入</li>
+ *     <li>实例在选路后检查 (提交时还不知道会落到哪个实例)，超限的实例和满载一样处理，换实例或稍后重试</li>
+ * </ul>
+ * 一次准入涉及多个桶：依次获取，任一拒绝则归还已获取的令牌。桶本身无锁，存放在 Caffeine 中 (分段并发，空闲回收)。
+ * 提交最终没有产生新任务 (幂等命中) 时，调用方通过 {@link Admission#refund()} 归还提交时扣减的令牌。
+ */
+@Slf4j
+@Component
+public class RateLimiter {
+
+    private static final Permit ALLOWED = new Permit(0, null);
+    private static final Admission UNCHARGED = new Admission(List.of());
+
+    private final RateLimitProperties properties;
+    // 维度:标识:rpm|tpm -> 令牌桶
+    private final Cache<String, TokenBucket> buckets;
+
+    public RateLimiter(RateLimitProperties properties) {
+        this.properties = properties;
+        this.buckets = Caffeine.newBuilder()
+                .expireAfterAccess(properties.getIdleExpireMs(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * 提交时的准入检查，超限时抛出 {@link RateLimitedException} (429 + Retry-After)，通过时返回本次扣减的令牌
+     */
+    public Admission checkSubmit(String apiKey, String model, long tokens) {
+        if (!properties.isEnabled()) {
+            return UNCHARGED;
+        }
+        List<Charge> charges = new ArrayList<>(4);
+        addCharges(charges, "key:" + apiKey, properties.keyLimit(apiKey), tokens);
+        addCharges(charges, "model:" + model, properties.modelLimit(model), tokens);
+        Permit permit = acquire(charges);
+        if (permit.waitNanos > 0) {
+            long retryAfter = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(permit.waitNanos + 999_999_999));
+            // 不在日志里输出 API Key
+            String bucket = permit.bucket.startsWith("key:") ? "api key" : permit.bucket;
+            log.info("Rate limited on {} (model {}), retry after {}s", bucket, model, retryAfter);
+            throw new RateLimitedException("Rate limit exceeded", retryAfter);
+        }
+        return new Admission(charges);
+    }
+
+    /**
+     * 选路后的实例配额检查，返回 false 表示该实例本分钟的配额已用完
+     */
+    public boolean tryAcquireInstance(String url, long tokens) {
+        if (!properties.isEnabled()) {
+            return true;
+        }
+        List<Charge> charges = new ArrayList<>(2);
+        addCharges(charges, "instance:" + url, properties.instanceLimit(url), tokens);
+        return acquire(charges).waitNanos == 0;
+    }
+
+    /**
+     * 估算一次请求消耗的 token 数：提示词按请求体长度折算 + 最大生成长度
+     */
+    public long estimateTokens(int requestLength, Integer maxTokens) {
+        int completion = maxTokens != null && maxTokens > 0 ? maxTokens : properties.getDefaultCompletionTokens();
+        return requestLength / Math.max(1, properties.getCharsPerToken()) + completion;
+    }
+
+    private void addCharges(List<Charge> charges, String prefix, RateLimitProperties.Limit limit, long tokens) {
+        if (limit.getRpm() > 0) {
+            charges.add(new Charge(prefix + ":rpm", bucket(prefix + ":rpm", limit.getRpm()), 1));
+        }
+        if (limit.getTpm() > 0) {
+            charges.add(new Charge(prefix + ":tpm", bucket(prefix + ":tpm", limit.getTpm()), tokens));
+        }
+    }
+
+    private TokenBucket bucket(String name, long ratePerMinute) {
+        return buckets.get(name, k -> new TokenBucket(ratePerMinute));
+    }
+
+    private Permit acquire(List<Charge> charges) {
+        long now = System.nanoTime();
+        for (int i = 0; i < charges.size(); i++) {
+            Charge charge = charges.get(i);
+            long wait = charge.bucket.tryAcquire(charge.permits, now);
+            if (wait > 0) {
+                for (int j = 0; j < i; j++) {
+                    charges.get(j).bucket.refund(charges.get(j).permits);
+                }
+                return new Permit(wait, charge.name);
+            }
+        }
+        return ALLOWED;
+    }
+
+    private record Charge(String name, TokenBucket bucket, long permits) {
+    }
+
+    /**
+     * 一次提交准入扣减的令牌
+     */
+    public static final class Admission {
+
+        private final List<Charge> charges;
+
+        private Admission(List<Charge> charges) {
+            this.charges = charges;
+        }
+
+        /**
+         * 归还本次准入扣减的令牌 (提交没有产生新任务时调用，只调用一次)
+         */
+        public void refund() {
+            for (Charge charge : charges) {
+                charge.bucket.refund(charge.permits);
+            }
+        }
+    }
+
+    private record Permit(long waitNanos, String bucket) {
+    }
+}
@@ -0,0 +1,55 @@
+package com.mooncell.gateway.core.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁令牌桶 (GCRA 形式)：只保存一个 "理论到达时间"，每次获取一次 CAS
+ * 补充速率为每分钟 ratePerMinute 个，容量为一分钟的配额
+ */
+final class TokenBucket {
+
+    private static final long MINUTE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    // 每个令牌的补充间隔
+    private final long intervalNanos;
+    // 桶容量对应的时长
+    private final long burstNanos;
+    private final AtomicLong tat;
+
+    TokenBucket(long ratePerMinute) {
+        this.intervalNanos = Math.max(1, MINUTE_NANOS / ratePerMinute);
+        this.burstNanos = intervalNanos * ratePerMinute;
+        this.tat = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * 获取 permits 个令牌，成功返回 0，否则返回需要等待的纳秒数 (不扣减)
+     * 超过桶容量的请求按桶容量计，桶满时总能通过
+     */
+    long tryAcquire(long permits, long now) {
+        long increment = cost(permits);
+        while (true) {
+            long current = tat.get();
+            long next = (current - now > 0 ? current : now) + increment;
+            long wait = next - now - burstNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (tat.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * 归还 permits 个令牌 (同一次准入中其他桶拒绝时回滚)
+     */
+    void refund(long permits) {
+        tat.addAndGet(-cost(permits));
+    }
+
+    private long cost(long permits) {
+        return permits >= burstNanos / intervalNanos ? burstNanos : permits * intervalNanos;
+    }
+}
@@ -0,0 +1,412 @@
+package com.mooncell.gateway.core.stream;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 单个任务的有界、可重放 SSE 环形缓冲区
+ * 任务提交时创建，每个 chunk 分配递增序号；客户端可以随时 (重新) 订阅并从 Last-Event-ID 之后开始重放。
+ * 已交付的 chunk 只为重放保留，超出字节/帧数上限时优先淘汰；客户端在读但消费过慢时按 {@link OverflowPolicy} 处理，
+ * 没有客户端时淘汰最早的未交付数据 (不取消上游)。
+ * 只检查 chunk 末尾是否为帧结束符，不解析帧内容，保证丢弃与事件 ID 都落在完整 SSE 帧的边界上。
+ */
+class BufferedStream {
+
+    private final String taskId;
+    private final StreamBridge.Settings settings;
+    private final StreamBridge.Counters counters;
+    private final Consumer<BufferedStream> onTerminate;
+
+    // 按序号递增排列 (DROP_OLDEST 可能在中间留下空洞)
+    private final List<Chunk> ring = new ArrayList<>();
+    private final Sinks.One<StreamCancelledException> cancelSignal = Sinks.one();
+    private volatile StreamCancelledException cancelCause;
+    private long bytes;
+    private long nextSeq = 1;
+    // 已从环中淘汰的最大序号，更早的偏移无法再重放
+    private long evictedUpTo;
+    // 曾交付给任一客户端的最大序号
+    private long delivered;
+
+    // 当前订阅者 (同一时间只有一个，新连接接管旧连接)
+    private FluxSink<DataBuffer> sink;
+    private int generation;
+    private long cursor;
+    // 最后交付的 chunk 是否以帧结束符结尾 (否则下一个 chunk 是半个帧，不能丢)
+    private boolean deliveredAtBoundary = true;
+
+    private boolean done;
+    private Throwable error;
+    private boolean cancelled;
+
+    BufferedStream(String taskId, StreamBridge.Settings settings, StreamBridge.Counters counters,
+                   Consumer<BufferedStream> onTerminate) {
+        this.taskId = taskId;
+        this.settings = settings;
+        this.counters = counters;
+        this.onTerminate = onTerminate;
+    }
+
+    String taskId() {
+        return taskId;
+    }
+
+    /**
+     * 订阅流：从 lastEventId 之后开始重放 (为 null 时从头开始)，之后继续接收实时数据
+     */
+    Flux<DataBuffer> attach(Long lastEventId) {
+        return Flux.<DataBuffer>create(s -> {
+                    int gen;
+                    synchronized (this) {
+                        long from = lastEventId != null ? lastEventId : 0;
+                        if (from < evictedUpTo) {
+                            s.error(new ResponseStatusException(HttpStatus.GONE,
+                                    "Stream offset " + from + " is no longer retained for task " + taskId));
+                            return;
+                        }
+                        if (from >= nextSeq) {
+                            s.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                                    "Unknown stream offset " + from + " for task " + taskId));
+                            return;
+                        }
+                        if (sink != null) {
+                            // 客户端重连，旧连接让位
+                            sink.complete();
+                        }
+                        sink = s;
+                        gen = ++generation;
+                        cursor = from;
+                        deliveredAtBoundary = true;
+                    }
+                    s.onRequest(n -> drain());
+                    s.onCancel(() -> detached(gen));
+                })
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    /**
+     * 让上游 Flux 可被取消：流被取消时，取消上游订阅并以 {@link StreamCancelledException} 结束
+     */
+    <T> Flux<T> cancellable(Flux<T> source) {
+        return source.takeUntilOther(cancelSignal.asMono())
+                .concatWith(Mono.defer(() -> cancelCause != null ? Mono.error(cancelCause) : Mono.empty()));
+    }
+
+    boolean isCancelled() {
+        return cancelCause != null;
+    }
+
+    synchronized void offer(DataBuffer buffer) {
+        if (done || cancelled) {
+            DataBufferUtils.release(buffer);
+            return;
+        }
+        Chunk chunk = new Chunk(nextSeq++, buffer, frameEnd(buffer));
+        ring.add(chunk);
+        bytes += chunk.size;
+        counters.bufferedBytes.add(chunk.size);
+        enforceLimits();
+        drain();
+    }
+
+    synchronized void complete(Throwable t) {
+        if (done || cancelled) {
+            return;
+        }
+        done = true;
+        error = t;
+        drain();
+        onTerminate.accept(this);
+    }
+
+    synchronized void cancel(String reason) {
+        if (done || cancelled) {
+            return;
+        }
+        cancelled = true;
+        counters.cancelledStreams.increment();
+        StreamCancelledException e = new StreamCancelledException(taskId, reason);
+        cancelCause = e;
+        cancelSignal.tryEmitValue(e);
+        clear();
+        if (sink != null) {
+            FluxSink<DataBuffer> s = sink;
+            sink = null;
+            s.error(e);
+        }
+        onTerminate.accept(this);
+    }
+
+    /**
+     * 保留期结束时释放缓冲区；仍有客户端在读时返回 false，稍后再试
+     */
+    synchronized boolean expire() {
+        if (sink != null) {
+            return false;
+        }
+        clear();
+        return true;
+    }
+
+    private synchronized void detached(int gen) {
+        if (gen != generation || sink == null) {
+            // 已被新连接接管或已正常结束
+            return;
+        }
+        sink = null;
+        if (done || cancelled) {
+            return;
+        }
+        long grace = settings.reattachGraceMs();
+        if (grace <= 0) {
+            cancel("client disconnected");
+            return;
+        }
+        // 宽限期内允许客户端重连续传，超时仍无人订阅才取消上游
+        Schedulers.parallel().schedule(() -> {
+            synchronized (this) {
+                if (sink == null) {
+                    cancel("client disconnected");
+                }
+            }
+        }, grace, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void drain() {
+        if (sink == null) {
+            return;
+        }
+        int index = indexAfter(cursor);
+        while (index < ring.size() && sink.requestedFromDownstream() > 0) {
+            Chunk chunk = ring.get(index++);
+            cursor = chunk.seq;
+            delivered = Math.max(delivered, cursor);
+            deliveredAtBoundary = chunk.frameEnd != Chunk.NONE;
+            emit(chunk);
+        }
+        if (index >= ring.size() && (done || cancelled)) {
+            FluxSink<DataBuffer> s = sink;
+            sink = null;
+            if (cancelled) {
+                s.error(cancelCause);
+            } else if (error != null) {
+                s.error(error);
+            } else {
+                s.complete();
+            }
+        }
+    }
+
+    /**
+     * 交付 chunk 的独立视图 (环中保留原件用于重放)；以 "\n\n" 结尾时在帧内追加 id 字段作为续传偏移
+     */
+    private void emit(Chunk chunk) {
+        DataBuffer view = duplicate(chunk.buffer);
+        if (settings.eventIds() && chunk.frameEnd != Chunk.NONE) {
+            // "data: ...\n\n" -> "data: ...\n" + "id: N\n\n" (CRLF 分帧同理)，拼成一个 buffer 交付 (Netty 下为 CompositeByteBuf，不复制)
+            String newline = chunk.frameEnd == Chunk.CRLF ? "\r\n" : "\n";
+            view.writePosition(view.writePosition() - newline.length());
+            DataBufferFactory factory = view.factory();
+            DataBuffer id = factory.wrap(("id: " + chunk.seq + newline + newline).getBytes(StandardCharsets.US_ASCII));
+            sink.next(factory.join(List.of(view, id)));
+        } else {
+            sink.next(view);
+        }
+    }
+
+    private void enforceLimits() {
+        // 1. 已交付过的数据只用于重放，先淘汰
+        long safe = sink != null ? cursor : delivered;
+        while (overLimit() && !ring.isEmpty() && ring.get(0).seq <= safe) {
+            Chunk chunk = ring.remove(0);
+            evictedUpTo = chunk.seq;
+            release(chunk);
+        }
+        if (!overLimit()) {
+            return;
+        }
+
+        // 2. 没有客户端在读 (恢复的任务、晚连接或断线的客户端)：不是慢消费，不取消上游；
+        // COALESCE 先无损合并帧数，仍超限时最早的数据转为重放缺口 (之后从更早的偏移续传返回 410)
+        if (sink == null) {
+            if (settings.policy() == OverflowPolicy.COALESCE && ring.size() > settings.maxFrames()) {
+                coalesce();
+            }
+            while (overLimit() && !ring.isEmpty()) {
+                Chunk chunk = ring.remove(0);
+                evictedUpTo = chunk.seq;
+                release(chunk);
+                counters.droppedFrames.increment();
+            }
+            return;
+        }
+
+        // 3. 剩下的都是尚未交付的数据：客户端消费过慢
+        switch (settings.policy()) {
+            case DROP_OLDEST -> {
+                while (overLimit() && dropOldestFrame()) {
+                    counters.droppedFrames.increment();
+                }
+                if (overLimit()) {
+                    // 只剩一个未结束的超大帧，无法再按帧丢弃
+                    cancel("buffer overflow");
+                }
+            }
+            case COALESCE -> {
+                if (ring.size() > settings.maxFrames()) {
+                    coalesce();
+                }
+                if (overLimit()) {
+                    cancel("buffer overflow");
+                }
+            }
+            case CANCEL_UPSTREAM -> cancel("buffer overflow");
+        }
+    }
+
+    private boolean overLimit() {
+        return bytes > settings.maxBytes() || ring.size() > settings.maxFrames();
+    }
+
+    /**
+     * 从第一个帧起点开始丢弃一个完整帧，没有可丢弃的完整帧时返回 false
+     * (队首可能是正在交付中的半个帧，队尾可能是尚未结束的帧，二者都不能丢)
+     */
+    private boolean dropOldestFrame() {
+        int start = -1;
+        int end = -1;
+        boolean atBoundary = deliveredAtBoundary;
+        for (int i = 0; i < ring.size(); i++) {
+            Chunk chunk = ring.get(i);
+            if (start < 0 && atBoundary) {
+                start = i;
+            }
+            if (start >= 0 && chunk.frameEnd != Chunk.NONE) {
+                end = i;
+                break;
+            }
+            atBoundary = chunk.frameEnd != Chunk.NONE;
+        }
+        if (end < 0) {
+            return false;
+        }
+        List<Chunk> dropped = ring.subList(start, end + 1);
+        dropped.forEach(this::release);
+        dropped.clear();
+        return true;
+    }
+
+    /**
+     * 把排队的 chunk 合并成一个连续 buffer (释放上游连接池的 buffer)，序号取最后一个
+     */
+    private void coalesce() {
+        int frames = ring.size();
+        DataBuffer merged = DefaultDataBufferFactory.sharedInstance.allocateBuffer((int) bytes);
+        Chunk last = ring.get(frames - 1);
+        for (Chunk chunk : ring) {
+            merged.write(chunk.buffer);
+            DataBufferUtils.release(chunk.buffer);
+        }
+        ring.clear();
+        ring.add(new Chunk(last.seq, merged, last.frameEnd));
+        counters.coalescedFrames.add(frames - 1);
+    }
+
+    private void clear() {
+        ring.forEach(this::release);
+        if (!ring.isEmpty()) {
+            evictedUpTo = ring.get(ring.size() - 1).seq;
+        }
+        ring.clear();
+    }
+
+    private void release(Chunk chunk) {
+        bytes -= chunk.size;
+        counters.bufferedBytes.add(-chunk.size);
+        DataBufferUtils.release(chunk.buffer);
+    }
+
+    /**
+     * 第一个序号大于 seq 的 chunk 下标
+     */
+    private int indexAfter(long seq) {
+        int low = 0;
+        int high = ring.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ring.get(mid).seq <= seq) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static DataBuffer duplicate(DataBuffer buffer) {
+        if (buffer instanceof NettyDataBuffer netty) {
+            // 共享内存，独立读写位置 + 引用计数
+            return netty.factory().wrap(netty.getNativeBuffer().retainedDuplicate());
+        }
+        if (buffer instanceof DefaultDataBuffer heap) {
+            ByteBuffer view = heap.getNativeBuffer().duplicate();
+            view.limit(heap.writePosition()).position(heap.readPosition());
+            return DefaultDataBufferFactory.sharedInstance.wrap(view);
+        }
+        byte[] bytes = new byte[buffer.readableByteCount()];
+        buffer.toByteBuffer(buffer.readPosition(), ByteBuffer.wrap(bytes), 0, bytes.length);
+        return DefaultDataBufferFactory.sharedInstance.wrap(bytes);
+    }
+
+    private static byte frameEnd(DataBuffer buffer) {
+        int end = buffer.writePosition();
+        int length = end - buffer.readPosition();
+        if (length < 2 || buffer.getByte(end - 1) != '\n') {
+            return Chunk.NONE;
+        }
+        if (buffer.getByte(end - 2) == '\n') {
+            return Chunk.LF;
+        }
+        if (length >= 4 && buffer.getByte(end - 2) == '\r' && buffer.getByte(end - 3) == '\n') {
+            return Chunk.CRLF;
+        }
+        return Chunk.NONE;
+    }
+
+    private static final class Chunk {
+        static final byte NONE = 0;
+        static final byte LF = 1;
+        static final byte CRLF = 2;
+
+        final long seq;
+        final DataBuffer buffer;
+        final int size;
+        final byte frameEnd;
+
+        Chunk(long seq, DataBuffer buffer, byte frameEnd) {
+            this.seq = seq;
+            this.buffer = buffer;
+            this.size = buffer.readableByteCount();
+            this.frameEnd = frameEnd;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.mooncell.gateway.core.stream;
+
+/**
+ * 单个 SSE 流缓冲区溢出 (客户端消费过慢) 时的处理策略
+ */
+public enum OverflowPolicy {
+
+    /**
+     * 丢弃最早的完整 SSE 帧，保留最新输出
+     */
+    DROP_OLDEST,
+
+    /**
+     * 帧数超限时把排队的 chunk 合并成一个连续 buffer (释放上游连接池的 buffer)，不丢数据；
+     * 字节数仍然超限时取消上游
+     */
+    COALESCE,
+
+    /**
+     * 直接取消上游请求并以错误结束客户端流
+     */
+    CANCEL_UPSTREAM
+}
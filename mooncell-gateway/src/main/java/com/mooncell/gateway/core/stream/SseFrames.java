@@ -0,0 +1,20 @@
+package com.mooncell.gateway.core.stream;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * SSE 帧编码，仅在需要把已解码的数据重新组帧时使用 (直通模式下不经过这里)
+ */
+public final class SseFrames {
+
+    private SseFrames() {
+    }
+
+    public static DataBuffer data(String data) {
+        byte[] bytes = ("data:" + data + "\n\n").getBytes(StandardCharsets.UTF_8);
+        return DefaultDataBufferFactory.sharedInstance.wrap(bytes);
+    }
+}
@@ -1,51 +1,178 @@
 package com.mooncell.gateway.core.stream;
 
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
 
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
+/**
+ * 消费者 -> SSE 连接的桥接
+ * 流在任务提交时创建 (而不是客户端订阅时)，先于订阅到达的数据不会丢失；
+ * 结束后保留一段时间，客户端可以携带 Last-Event-ID 重新订阅续传。
+ * 传递的是原始字节 (DataBuffer)，可能来自上游连接池 (引用计数)：缓冲区淘汰或过期时在这里释放。
+ * 每个流的缓冲区有字节数和帧数上限，慢客户端按 {@link OverflowPolicy} 处理，不会无限占用堆内存。
+ */
 @Component
 public class StreamBridge {
 
-    // TaskID -> Sink
-    private final Map<String, Sinks.Many<String>> sinks = new ConcurrentHashMap<>();
+    // TaskID -> Stream
+    private final Map<String, BufferedStream> streams = new ConcurrentHashMap<>();
+    private final Counters counters = new Counters();
+    private final List<Consumer<String>> cancelListeners = new CopyOnWriteArrayList<>();
+    private Settings settings;
 
-    public Sinks.Many<String> createSink(String taskId) {
-        // 使用 unicast，因为通常只有一个 HTTP 连接在等待 SSE
-        Sinks.Many<String> sink = Sinks.many().unicast().onBackpressureBuffer();
-        sinks.put(taskId, sink);
-        return sink;
+    // 单个流最多缓冲的字节数
+    @Value("${mooncell.stream.buffer.max-bytes:262144}")
+    private long maxBytes;
+
+    // 单个流最多缓冲的 chunk 数
+    @Value("${mooncell.stream.buffer.max-frames:1024}")
+    private int maxFrames;
+
+    @Value("${mooncell.stream.buffer.overflow-policy:COALESCE}")
+    private OverflowPolicy overflowPolicy;
+
+    // 在帧内追加 id 字段，客户端断线重连时通过 Last-Event-ID 续传
+    @Value("${mooncell.stream.event-ids:true}")
+    private boolean eventIds;
+
+    // 流结束后保留多久，期间可以重新订阅重放
+    @Value("${mooncell.stream.retention-ms:60000}")
+    private long retentionMs;
+
+    // 客户端断开后等待重连的时间，0 表示立即取消上游
+    @Value("${mooncell.stream.reattach-grace-ms:5000}")
+    private long reattachGraceMs;
+
+    @PostConstruct
+    public void init() {
+        settings = new Settings(maxBytes, maxFrames, overflowPolicy, eventIds, reattachGraceMs);
+    }
+
+    /**
+     * 任务提交时创建流 (幂等)
+     */
+    public void open(String taskId) {
+        streams.computeIfAbsent(taskId, id -> new BufferedStream(id, settings, counters, this::terminated));
     }
 
-    public void emit(String taskId, String data) {
-        Sinks.Many<String> sink = sinks.get(taskId);
-        if (sink != null) {
-            sink.tryEmitNext(data);
+    /**
+     * 任务没能入队时丢弃流
+     */
+    public void discard(String taskId) {
+        BufferedStream stream = streams.remove(taskId);
+        if (stream != null) {
+            stream.expire();
         }
     }
 
+    /**
+     * 订阅任务的 SSE 流：从 lastEventId 之后重放 (为 null 时从头开始)，再继续接收实时数据。
+     * 客户端取消订阅 (且宽限期内未重连) 时会取消经 {@link #cancellable(String, Flux)} 包装的上游请求
+     */
+    public Flux<DataBuffer> attach(String taskId, Long lastEventId) {
+        BufferedStream stream = streams.get(taskId);
+        return stream != null ? stream.attach(lastEventId)
+                : Flux.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "Task stream not found: " + taskId));
+    }
+
+    public void emit(String taskId, DataBuffer data) {
+        BufferedStream stream = streams.get(taskId);
+        if (stream == null) {
+            // 流已过期，归还 buffer
+            DataBufferUtils.release(data);
+            return;
+        }
+        stream.offer(data);
+    }
+
     public void complete(String taskId) {
-        Sinks.Many<String> sink = sinks.get(taskId);
-        if (sink != null) {
-            sink.tryEmitComplete();
-            sinks.remove(taskId);
+        BufferedStream stream = streams.get(taskId);
+        if (stream != null) {
+            stream.complete(null);
         }
     }
 
     public void error(String taskId, Throwable t) {
-        Sinks.Many<String> sink = sinks.get(taskId);
-        if (sink != null) {
-            sink.tryEmitError(t);
-            sinks.remove(taskId);
+        BufferedStream stream = streams.get(taskId);
+        if (stream != null) {
+            stream.complete(t);
         }
     }
-    
-    public Flux<String> getFlux(String taskId) {
-        Sinks.Many<String> sink = sinks.get(taskId);
-        return sink != null ? sink.asFlux() : Flux.error(new RuntimeException("Task not found"));
+
+    /**
+     * 包装上游请求：客户端断开或缓冲区溢出要求取消时，取消正在进行的 WebClient 订阅，
+     * 并以 {@link StreamCancelledException} 结束
+     */
+    public <T> Flux<T> cancellable(String taskId, Flux<T> upstream) {
+        BufferedStream stream = streams.get(taskId);
+        return stream != null ? stream.cancellable(upstream) : upstream;
     }
-}
 
+    public boolean isCancelled(String taskId) {
+        BufferedStream stream = streams.get(taskId);
+        return stream != null && stream.isCancelled();
+    }
+
+    /**
+     * 注册流取消回调 (参数为 taskId)，用于把尚未执行的任务直接标记为取消
+     */
+    public void onCancel(Consumer<String> listener) {
+        cancelListeners.add(listener);
+    }
+
+    private void terminated(BufferedStream stream) {
+        if (stream.isCancelled()) {
+            cancelListeners.forEach(listener -> listener.accept(stream.taskId()));
+        }
+        scheduleExpiry(stream);
+    }
+
+    private void scheduleExpiry(BufferedStream stream) {
+        Schedulers.parallel().schedule(() -> {
+            if (stream.expire()) {
+                streams.remove(stream.taskId(), stream);
+            } else {
+                // 还有客户端在读，推迟释放
+                scheduleExpiry(stream);
+            }
+        }, retentionMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 流缓冲指标
+     */
+    public Map<String, Long> metrics() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        values.put("activeStreams", (long) streams.size());
+        values.put("bufferedBytes", counters.bufferedBytes.sum());
+        values.put("droppedFrames", counters.droppedFrames.sum());
+        values.put("coalescedFrames", counters.coalescedFrames.sum());
+        values.put("cancelledStreams", counters.cancelledStreams.sum());
+        return values;
+    }
+
+    record Settings(long maxBytes, int maxFrames, OverflowPolicy policy, boolean eventIds, long reattachGraceMs) {
+    }
+
+    static class Counters {
+        final LongAdder bufferedBytes = new LongAdder();
+        final LongAdder droppedFrames = new LongAdder();
+        final LongAdder coalescedFrames = new LongAdder();
+        final LongAdder cancelledStreams = new LongAdder();
+    }
+}
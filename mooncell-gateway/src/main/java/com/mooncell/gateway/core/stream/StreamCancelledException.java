@@ -0,0 +1,11 @@
+package com.mooncell.gateway.core.stream;
+
+/**
+ * SSE 流被取消 (客户端断开或缓冲区溢出)，用于通知上游请求停止
+ */
+public class StreamCancelledException extends RuntimeException {
+
+    public StreamCancelledException(String taskId, String reason) {
+        super("Stream " + taskId + " cancelled: " + reason, null, false, false);
+    }
+}
@@ -0,0 +1,112 @@
+package com.mooncell.gateway.core.task;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单写线程批量落库的通用骨架 (Group Commit)
+ * 生产方只往内存缓冲追加，写线程按 "批量大小 / 时间窗口" 取出一批交给 {@link #flush(List)}。
+ */
+@Slf4j
+public abstract class BatchWriter<T> {
+
+    private final String threadName;
+    private final int batchSize;
+    private final long flushIntervalMs;
+
+    private final BlockingQueue<T> pending = new LinkedBlockingQueue<>();
+    private volatile boolean running = true;
+    private Thread writerThread;
+
+    protected BatchWriter(String threadName, int batchSize, long flushIntervalMs) {
+        this.threadName = threadName;
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+    }
+
+    /**
+     * 写入一批数据，调用方负责回调每条数据的提交方
+     */
+    protected abstract void flush(List<T> batch);
+
+    @PostConstruct
+    public void start() {
+        writerThread = new Thread(this::writeLoop, threadName);
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        writerThread.interrupt();
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 停机时把剩余的数据同步刷完，避免提交方永远等待
+        List<T> rest = new ArrayList<>();
+        pending.drainTo(rest);
+        if (!rest.isEmpty()) {
+            flush(rest);
+        }
+    }
+
+    /**
+     * 追加到缓冲区，写线程已停止时返回 false
+     */
+    protected boolean enqueue(T item) {
+        if (!running) {
+            return false;
+        }
+        pending.add(item);
+        // 与 stop() 的 "先置 running 再收尾" 配对：追加后复查，stop() 已开始时要么收回这条，
+        // 要么它已被收尾取走并刷盘，不会留在缓冲区里无人处理
+        if (!running && pending.remove(item)) {
+            return false;
+        }
+        return true;
+    }
+
+    private void writeLoop() {
+        List<T> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                // 1. 阻塞等待第一条
+                batch.add(pending.take());
+
+                // 2. 在时间窗口内尽量凑满一批
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    if (pending.drainTo(batch, batchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) break;
+                    T next = pending.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+
+                flush(batch);
+            } catch (InterruptedException e) {
+                // 被中断时手上可能还有未提交的批次，交回队列由 stop() 收尾
+                pending.addAll(batch);
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Error in {} loop", threadName, e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+}
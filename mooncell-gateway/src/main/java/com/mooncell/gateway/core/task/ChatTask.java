@@ -5,6 +5,8 @@ import lombok.Builder;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 
+import java.time.LocalDateTime;
+
 @Data
 @Builder
 @NoArgsConstructor
@@ -13,8 +15,17 @@ public class ChatTask {
     private String id;
     private String idempotencyKey;
     private String model;
-    private String requestJson;
-    private String status; // PENDING, RUNNING, COMPLETED, FAILED
+    // 客户端请求体原样字节 (已去掉网关字段)，持久化到 request_json 并直接转发给上游
+    private byte[] requestBody;
+    private String status; // PENDING, RUNNING, COMPLETED, FAILED, CANCELLED
+    private TaskPriority priority;
+    private String tenant;
+    // 恢复分页的游标
+    private LocalDateTime createdAt;
     // 运行时不需要序列化到 DB 的字段，或者 transient
+    // 响应缓存 Key (本任务是合并请求的 leader 时非空)，恢复的任务没有
+    private transient String cacheKey;
+    // 提交时解析出的 max_tokens (估算 token 用)，恢复的任务为空
+    private transient Integer maxTokens;
 }
 
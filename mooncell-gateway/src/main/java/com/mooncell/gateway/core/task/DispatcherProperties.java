@@ -0,0 +1,39 @@
+package com.mooncell.gateway.core.task;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 任务调度器配置 (mooncell.dispatcher.*)
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "mooncell.dispatcher")
+public class DispatcherProperties {
+
+    // 调度器实现：reactive (Flux flatMap 消费) / virtual (每任务一个虚拟线程)
+    private String type = "reactive";
+
+    // 全局在途任务上限 (上游是长连接流，瓶颈是并发而不是 CPU)
+    private int concurrency = 1024;
+
+    // 单模型默认在途上限
+    private int maxPerModel = 512;
+
+    // 单模型在途上限覆盖, e.g. mooncell.dispatcher.per-model.gpt-4=128
+    private Map<String, Integer> perModel = new HashMap<>();
+
+    // 出队轮询间隔 (毫秒)，决定停机时退出消费循环的延迟
+    private long pollIntervalMs = 200;
+
+    // 停机时等待在途任务结束的最长时间 (毫秒)，超时后取消剩余任务
+    private long shutdownTimeoutMs = 30000;
+
+    public int limitFor(String model) {
+        return perModel.getOrDefault(model, maxPerModel);
+    }
+}
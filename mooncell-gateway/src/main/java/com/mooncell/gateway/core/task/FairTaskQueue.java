@@ -0,0 +1,169 @@
+package com.mooncell.gateway.core.task;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * 公平任务队列：按 优先级 + 模型 + 租户 拆成子队列，子队列之间做差额轮询 (DRR)
+ * <ul>
+ *     <li>每轮给子队列的配额取决于优先级 (interactive-weight / batch-weight)，批量任务再多也只能按比例出队</li>
+ *     <li>每个子队列有独立的深度上限，一个租户的批量任务占满自己的子队列后不影响其他人入队</li>
+ *     <li>模型已饱和 (admit 返回 false) 的子队列本轮跳过，不会挡住其他模型的任务</li>
+ * </ul>
+ * 入队/出队在一把锁内完成 (临界区只有几次集合操作)；空的子队列立即移除，避免租户数无限增长。
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "mooncell.queue.type", havingValue = "fair", matchIfMissing = true)
+public class FairTaskQueue implements TaskQueue {
+
+    private final QueueProperties properties;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+
+    // 子队列 Key -> 子队列
+    private final Map<String, SubQueue> queues = new HashMap<>();
+    // 非空子队列的轮询顺序，队首即当前轮到的子队列
+    private final ArrayDeque<SubQueue> active = new ArrayDeque<>();
+    private volatile int size;
+
+    @Override
+    public boolean offer(ChatTask task) {
+        lock.lock();
+        try {
+            if (size >= properties.getCapacity()) {
+                return false;
+            }
+            TaskPriority priority = task.getPriority() == null ? TaskPriority.INTERACTIVE : task.getPriority();
+            String key = priority + "/" + task.getModel() + "/" + task.getTenant();
+            SubQueue queue = queues.get(key);
+            if (queue == null) {
+                queue = new SubQueue(key, task.getModel(), properties.weightOf(priority));
+                queues.put(key, queue);
+                active.addLast(queue);
+            } else if (queue.tasks.size() >= properties.getMaxDepthPerQueue()) {
+                return false;
+            }
+            queue.tasks.addLast(task);
+            size++;
+            available.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public ChatTask poll(long timeout, TimeUnit unit, Predicate<String> admit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                ChatTask task = next(admit);
+                if (task != null) {
+                    return task;
+                }
+                if (nanos <= 0) {
+                    return null;
+                }
+                // 队列为空或所有模型都饱和：等待入队或槽位释放
+                nanos = available.awaitNanos(nanos);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 从队首开始最多轮询一圈，找到第一个模型可接纳的子队列出队
+     */
+    private ChatTask next(Predicate<String> admit) {
+        Set<String> saturated = null;
+        for (int i = active.size(); i > 0; i--) {
+            SubQueue queue = active.peekFirst();
+            if ((saturated != null && saturated.contains(queue.model)) || !admit.test(queue.model)) {
+                if (saturated == null) {
+                    saturated = new HashSet<>();
+                }
+                saturated.add(queue.model);
+                // 放弃本轮剩余配额，移到队尾
+                queue.deficit = 0;
+                active.addLast(active.pollFirst());
+                continue;
+            }
+            if (queue.deficit <= 0) {
+                queue.deficit = queue.quantum;
+            }
+            ChatTask task = queue.tasks.pollFirst();
+            queue.deficit--;
+            size--;
+            if (queue.tasks.isEmpty()) {
+                active.pollFirst();
+                queues.remove(queue.key);
+            } else if (queue.deficit == 0) {
+                active.addLast(active.pollFirst());
+            }
+            return task;
+        }
+        return null;
+    }
+
+    @Override
+    public void signal() {
+        if (size == 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Map<String, Integer> depths() {
+        lock.lock();
+        try {
+            Map<String, Integer> depths = new LinkedHashMap<>();
+            for (SubQueue queue : active) {
+                depths.put(queue.key, queue.tasks.size());
+            }
+            return depths;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class SubQueue {
+        final String key;
+        final String model;
+        final int quantum;
+        final ArrayDeque<ChatTask> tasks = new ArrayDeque<>();
+        int deficit;
+
+        SubQueue(String key, String model, int quantum) {
+            this.key = key;
+            this.model = model;
+            this.quantum = Math.max(1, quantum);
+        }
+    }
+}
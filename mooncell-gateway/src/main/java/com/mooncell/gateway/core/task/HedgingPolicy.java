@@ -0,0 +1,39 @@
+package com.mooncell.gateway.core.task;
+
+import com.mooncell.gateway.core.model.LatencyTracker;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 对冲请求策略：按模型统计首 token 时间 (TTFT)，以其分位数作为发出对冲请求前的等待时间
+ */
+@Component
+@RequiredArgsConstructor
+public class HedgingPolicy {
+
+    private final HedgingProperties properties;
+
+    // ModelName -> TTFT (跨实例)
+    private final Map<String, LatencyTracker> ttft = new ConcurrentHashMap<>();
+
+    public boolean enabledFor(String model) {
+        return properties.isEnabled() && (properties.getModels().isEmpty() || properties.getModels().contains(model));
+    }
+
+    public LatencyTracker ttftOf(String model) {
+        return ttft.computeIfAbsent(model, k -> new LatencyTracker());
+    }
+
+    public Duration delayFor(String model) {
+        LatencyTracker tracker = ttft.get(model);
+        if (tracker == null || tracker.getCount() < properties.getMinSamples()) {
+            return Duration.ofMillis(properties.getDefaultDelayMs());
+        }
+        long millis = (long) tracker.percentileMillis(properties.getPercentile());
+        return Duration.ofMillis(Math.max(properties.getMinDelayMs(), Math.min(properties.getMaxDelayMs(), millis)));
+    }
+}
@@ -0,0 +1,36 @@
+package com.mooncell.gateway.core.task;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 对冲请求配置 (mooncell.hedge.*)
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "mooncell.hedge")
+public class HedgingProperties {
+
+    // 全局开关 (默认关闭：对冲会额外消耗上游配额)
+    private boolean enabled = false;
+
+    // 只对这些模型开启，为空表示所有模型
+    private Set<String> models = new HashSet<>();
+
+    // 首 token 超过该模型 TTFT 的这个分位数仍未到达，则向另一个实例发出对冲请求
+    private double percentile = 0.95;
+
+    // 样本不足时使用的等待时间 (毫秒)
+    private long defaultDelayMs = 3000;
+
+    // 分位数计算出的等待时间的上下限 (毫秒)
+    private long minDelayMs = 200;
+    private long maxDelayMs = 10000;
+
+    // 计算分位数至少需要的样本数
+    private int minSamples = 20;
+}
@@ -0,0 +1,202 @@
+package com.mooncell.gateway.core.task;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mooncell.gateway.core.dao.TaskMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 内存幂等键索引：最近的 幂等键 -> 任务 id (Caffeine，有界 + 过期)，前面是一个轮换的布隆过滤器
+ * <ul>
+ *     <li>缓存命中：直接返回已有任务，不查库</li>
+ *     <li>布隆过滤器判定 "没见过"：跳过查库直接写 WAL (绝大多数请求)</li>
+ *     <li>其余情况 (可能见过但不在缓存里) 才查库</li>
+ * </ul>
+ * 键在 WAL 落库后登记。布隆过滤器轮换或预热不全导致的漏判是安全的：唯一约束冲突后仍会回查 DB。
+ */
+@Slf4j
+@Component
+public class IdempotencyIndex {
+
+    public enum Lookup { NEW, MAYBE }
+
+    private final TaskMapper taskMapper;
+    private final IdempotencyProperties properties;
+    private final Cache<String, String> recent;
+    private final RotatingBloomFilter seen;
+
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder bloomMisses = new LongAdder();
+    private final LongAdder bloomPositives = new LongAdder();
+
+    public IdempotencyIndex(TaskMapper taskMapper, IdempotencyProperties properties) {
+        this.taskMapper = taskMapper;
+        this.properties = properties;
+        this.recent = Caffeine.newBuilder()
+                .maximumSize(properties.getCacheSize())
+                .expireAfterWrite(properties.getCacheTtlMs(), TimeUnit.MILLISECONDS)
+                .build();
+        this.seen = new RotatingBloomFilter(properties.getBloomExpectedKeys(), properties.getBloomFpp());
+    }
+
+    @PostConstruct
+    public void warm() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        List<ChatTask> tasks = taskMapper.findRecentIdempotencyKeys(properties.getWarmLimit());
+        for (ChatTask task : tasks) {
+            record(task.getIdempotencyKey(), task.getId());
+        }
+        log.info("Idempotency index warmed with {} keys", tasks.size());
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 缓存中的任务 id，没有时返回 null
+     */
+    public String get(String key) {
+        String taskId = recent.getIfPresent(key);
+        if (taskId != null) {
+            cacheHits.increment();
+        }
+        return taskId;
+    }
+
+    /**
+     * 缓存未命中时判断是否需要查库：NEW 表示一定没见过 (不考虑轮换)，MAYBE 需要查库
+     */
+    public Lookup classify(String key) {
+        if (seen.mightContain(key)) {
+            bloomPositives.increment();
+            return Lookup.MAYBE;
+        }
+        bloomMisses.increment();
+        return Lookup.NEW;
+    }
+
+    /**
+     * 任务已落库 (WAL ACK 之后)，或查库得到已有任务
+     */
+    public void record(String key, String taskId) {
+        recent.put(key, taskId);
+        seen.put(key);
+    }
+
+    public Map<String, Long> metrics() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        values.put("cached", recent.estimatedSize());
+        values.put("cacheHits", cacheHits.sum());
+        values.put("bloomMisses", bloomMisses.sum());
+        values.put("bloomPositives", bloomPositives.sum());
+        values.put("bloomGenerationKeys", (long) seen.current.count.get());
+        return values;
+    }
+
+    /**
+     * 两代布隆过滤器：写入当前代，查询两代；当前代写满后丢弃上一代、新建当前代，内存与误判率都有上界
+     */
+    static final class RotatingBloomFilter {
+        private final int expectedKeys;
+        private final double fpp;
+        private volatile BloomFilter current;
+        private volatile BloomFilter previous;
+
+        RotatingBloomFilter(int expectedKeys, double fpp) {
+            this.expectedKeys = Math.max(1, expectedKeys);
+            this.fpp = fpp;
+            this.current = new BloomFilter(this.expectedKeys, fpp);
+        }
+
+        boolean mightContain(String key) {
+            long hash = hash(key);
+            BloomFilter prev = previous;
+            return current.mightContain(hash) || (prev != null && prev.mightContain(hash));
+        }
+
+        void put(String key) {
+            BloomFilter filter = current;
+            filter.put(hash(key));
+            // 只有写满的那一次 put 负责轮换；轮换期间写入旧代的键仍在上一代里可查
+            if (filter.count.incrementAndGet() == expectedKeys) {
+                previous = filter;
+                current = new BloomFilter(expectedKeys, fpp);
+            }
+        }
+
+        // FNV-1a 64 位，再做一次 fmix64 打散
+        private static long hash(String key) {
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < key.length(); i++) {
+                h ^= key.charAt(i);
+                h *= 0x100000001b3L;
+            }
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+
+    /**
+     * 无锁布隆过滤器：k 个位置由一个 64 位哈希的两半做双重哈希得到
+     */
+    static final class BloomFilter {
+        private final AtomicLongArray bits;
+        private final long size;
+        private final int hashes;
+        final AtomicInteger count = new AtomicInteger();
+
+        BloomFilter(int expectedKeys, double fpp) {
+            long m = (long) Math.ceil(-expectedKeys * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+            int words = (int) Math.max(1, (m + 63) / 64);
+            this.bits = new AtomicLongArray(words);
+            this.size = (long) words * 64;
+            this.hashes = Math.max(1, (int) Math.round((double) size / expectedKeys * Math.log(2)));
+        }
+
+        void put(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashes; i++) {
+                long bit = Math.floorMod(h1 + (long) i * h2, size);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long old;
+                do {
+                    old = bits.get(word);
+                    if ((old & mask) != 0) {
+                        break;
+                    }
+                } while (!bits.compareAndSet(word, old, old | mask));
+            }
+        }
+
+        boolean mightContain(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashes; i++) {
+                long bit = Math.floorMod(h1 + (long) i * h2, size);
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.mooncell.gateway.core.task;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 幂等键索引配置 (mooncell.idempotency.*)
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "mooncell.idempotency")
+public class IdempotencyProperties {
+
+    // 关闭时每个带幂等键的请求都查库
+    private boolean enabled = true;
+
+    // 最近的 幂等键 -> 任务 id 缓存条数
+    private int cacheSize = 100000;
+
+    // 缓存过期时间 (毫秒)，应小于 mooncell.task.retention.hot-retention-ms (归档后幂等键可以重新使用)
+    private long cacheTtlMs = 3600000;
+
+    // 布隆过滤器每一代容纳的键数，写满后轮换 (保留上一代)
+    private int bloomExpectedKeys = 1000000;
+
+    // 布隆过滤器误判率
+    private double bloomFpp = 0.01;
+
+    // 启动时从 chat_task 预热的键数
+    private int warmLimit = 100000;
+}
@@ -0,0 +1,36 @@
+package com.mooncell.gateway.core.task;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 按模型限制在途任务数，避免单个模型占满全局并发
+ */
+@Component
+@RequiredArgsConstructor
+public class ModelConcurrencyLimiter {
+
+    private final DispatcherProperties properties;
+
+    // Model -> Semaphore
+    private final Map<String, Semaphore> permits = new ConcurrentHashMap<>();
+
+    public boolean tryAcquire(String model) {
+        return semaphore(model).tryAcquire();
+    }
+
+    public void release(String model) {
+        Semaphore semaphore = permits.get(model);
+        if (semaphore != null) {
+            semaphore.release();
+        }
+    }
+
+    private Semaphore semaphore(String model) {
+        return permits.computeIfAbsent(model, k -> new Semaphore(properties.limitFor(k)));
+    }
+}
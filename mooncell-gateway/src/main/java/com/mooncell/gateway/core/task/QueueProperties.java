@@ -0,0 +1,41 @@
+package com.mooncell.gateway.core.task;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 任务队列配置 (mooncell.queue.*)
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "mooncell.queue")
+public class QueueProperties {
+
+    // 队列实现：fair (按 优先级/模型/租户 分子队列，差额轮询) / ring (无锁环形队列，FIFO)
+    private String type = "fair";
+
+    // 全局容量 (ring 向上取整到 2 的幂)
+    private int capacity = 10000;
+
+    // ring 队列为空时消费者的等待方式
+    private WaitStrategy waitStrategy = WaitStrategy.BLOCKING;
+
+    // 单个子队列 (优先级 + 模型 + 租户) 的容量，避免一个批量任务占满全局队列
+    private int maxDepthPerQueue = 2000;
+
+    // 差额轮询 (DRR) 每轮给子队列的配额 (任务数)，即各优先级的出队比例
+    private int interactiveWeight = 8;
+    private int batchWeight = 1;
+
+    public int weightOf(TaskPriority priority) {
+        return priority == TaskPriority.BATCH ? batchWeight : interactiveWeight;
+    }
+
+    /**
+     * BUSY_SPIN 延迟最低但独占一个核；YIELDING / SLEEPING 依次让出 CPU；BLOCKING 在锁条件上等待，空闲时不耗 CPU
+     */
+    public enum WaitStrategy {
+        BUSY_SPIN, YIELDING, SLEEPING, BLOCKING
+    }
+}
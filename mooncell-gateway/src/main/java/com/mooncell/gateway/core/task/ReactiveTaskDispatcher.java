@@ -0,0 +1,86 @@
+package com.mooncell.gateway.core.task;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 响应式调度器：把队列当作一个按需拉取的 Flux，通过 flatMap 的 concurrency 控制在途任务数
+ * 只有 flatMap 有空位时才会向下一次出队发起请求，天然具备背压
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "mooncell.dispatcher.type", havingValue = "reactive", matchIfMissing = true)
+public class ReactiveTaskDispatcher implements TaskDispatcher {
+
+    private final TaskManager taskManager;
+    private final TaskConsumer taskConsumer;
+    private final ModelConcurrencyLimiter modelLimiter;
+    private final DispatcherProperties properties;
+
+    private final CountDownLatch terminated = new CountDownLatch(1);
+    private volatile boolean running;
+    private Scheduler drainScheduler;
+    private Disposable subscription;
+
+    @Override
+    @PostConstruct
+    public void start() {
+        running = true;
+        // 出队是阻塞的 poll，放在独立的单线程上，不能占用 Reactor 的非阻塞线程
+        drainScheduler = Schedulers.fromExecutorService(Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "TaskDispatcher-Drain");
+            t.setDaemon(true);
+            return t;
+        }), "TaskDispatcher-Drain");
+
+        // 出队时即占用模型槽位：饱和模型的任务不出队，也不会挡住其他模型
+        subscription = Mono.fromCallable(() -> taskManager.poll(properties.getPollIntervalMs(), TimeUnit.MILLISECONDS,
+                        modelLimiter::tryAcquire))
+                .repeat(() -> running)
+                .subscribeOn(drainScheduler)
+                // 内层是单元素的 Mono，并发上限即向出队源请求的数量，无需另设 prefetch
+                .flatMap(this::dispatch, properties.getConcurrency())
+                .doFinally(signal -> terminated.countDown())
+                .subscribe(null, e -> log.error("Task dispatcher terminated unexpectedly", e));
+        log.info("Reactive task dispatcher started, concurrency={}", properties.getConcurrency());
+    }
+
+    private Mono<Void> dispatch(ChatTask task) {
+        return taskConsumer.process(task)
+                .doFinally(signal -> {
+                    modelLimiter.release(task.getModel());
+                    taskManager.signal();
+                });
+    }
+
+    @Override
+    @PreDestroy
+    public void stop() {
+        // 停止出队，flatMap 在所有在途任务结束后自然完成
+        running = false;
+        try {
+            if (!terminated.await(properties.getShutdownTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                log.warn("Task dispatcher did not drain within {}ms, cancelling in-flight tasks",
+                        properties.getShutdownTimeoutMs());
+                subscription.dispose();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            subscription.dispose();
+        }
+        drainScheduler.dispose();
+    }
+}
@@ -0,0 +1,32 @@
+package com.mooncell.gateway.core.task;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 任务恢复与租约配置 (mooncell.task.recovery.*)
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "mooncell.task.recovery")
+public class RecoveryProperties {
+
+    // 恢复时每页读取的任务数
+    private int pageSize = 500;
+
+    // 恢复的任务最多占用队列容量的比例，剩余部分留给新请求
+    private double maxQueueFill = 0.5;
+
+    // 队列达到上限时的重试间隔 (毫秒)
+    private long backoffMs = 100;
+
+    // RUNNING 任务的租约时长 (毫秒)：心跳超过该时长未刷新即视为执行方已失效
+    private long leaseMs = 60000;
+
+    // 心跳间隔 (毫秒)，应明显小于 lease-ms
+    private long heartbeatIntervalMs = 15000;
+
+    // 检查过期租约的间隔 (毫秒)
+    private long reclaimIntervalMs = 30000;
+}
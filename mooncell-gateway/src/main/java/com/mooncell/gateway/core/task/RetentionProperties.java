@@ -0,0 +1,38 @@
+package com.mooncell.gateway.core.task;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 任务表生命周期配置 (mooncell.task.retention.*)
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "mooncell.task.retention")
+public class RetentionProperties {
+
+    private boolean enabled = true;
+
+    // ARCHIVE: 移到 chat_task_archive；DELETE: 直接删除
+    private Mode mode = Mode.ARCHIVE;
+
+    // 终态任务在热表保留多久 (毫秒)
+    private long hotRetentionMs = 24 * 3600 * 1000L;
+
+    // 归档表保留多久 (毫秒)，0 表示不清理归档
+    private long archiveRetentionMs = 30 * 24 * 3600 * 1000L;
+
+    // 每批处理行数 (一个事务)
+    private int batchSize = 500;
+
+    // 每次运行最多处理的批数，剩余的留到下一次，避免长时间占用连接
+    private int maxBatchesPerRun = 20;
+
+    // 运行间隔 (毫秒)
+    private long intervalMs = 60000;
+
+    public enum Mode {
+        ARCHIVE, DELETE
+    }
+}
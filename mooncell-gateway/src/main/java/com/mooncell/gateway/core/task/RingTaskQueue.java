@@ -0,0 +1,294 @@
+package com.mooncell.gateway.core.task;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * 无锁环形任务队列：预分配槽位的多生产者/多消费者有界队列 (每个槽位一个序号，入队/出队各一次 CAS)，
+ * 入队不分配节点、不加锁；队列为空时消费者按 {@link QueueProperties.WaitStrategy} 等待
+ * <p>
+ * 环形队列只能按 FIFO 出队：取出的任务所属模型已饱和时，任务转入按模型划分的等待区 (只在饱和时使用)，
+ * 同一模型的后续任务排在其后，其他模型的任务继续从环形队列出队。不区分优先级与租户，需要公平调度时使用 fair 队列。
+ * <p>
+ * 等待区与环形队列共用同一容量：入队前先占用计数，任务交给调用方时归还。
+ */
+@Component
+@ConditionalOnProperty(name = "mooncell.queue.type", havingValue = "ring")
+public class RingTaskQueue implements TaskQueue {
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long SLEEP_NANOS = 100_000;
+
+    private final QueueProperties.WaitStrategy waitStrategy;
+    private final int capacity;
+    private final int mask;
+    private final ChatTask[] slots;
+    // 槽位序号：等于入队位置表示可写，等于入队位置 + 1 表示可读
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new PaddedAtomicLong();
+    private final AtomicLong tail = new PaddedAtomicLong();
+
+    // 环形队列 + 等待区中的任务数 (含入队中的占位)，不超过 capacity 才允许入队
+    private final AtomicInteger count = new PaddedAtomicInteger();
+
+    // 模型饱和时的等待区：Model -> 任务 (保持 FIFO)
+    private final Map<String, ArrayDeque<ChatTask>> deferred = new LinkedHashMap<>();
+    private volatile int deferredCount;
+
+    // BLOCKING 策略下的消费者等待
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final AtomicInteger waiters = new AtomicInteger();
+    // signal() 次数：消费者挂起前比对，错过的等待区唤醒不会丢
+    private final AtomicLong signals = new AtomicLong();
+
+    public RingTaskQueue(QueueProperties properties) {
+        int capacity = Integer.highestOneBit(Math.max(2, properties.getCapacity()) - 1) << 1;
+        this.waitStrategy = properties.getWaitStrategy();
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.slots = new ChatTask[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    @Override
+    public boolean offer(ChatTask task) {
+        // 等待区占用的容量也算在内
+        if (count.incrementAndGet() > capacity) {
+            count.decrementAndGet();
+            return false;
+        }
+        long pos = tail.get();
+        int index;
+        while (true) {
+            index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                // 上一圈的任务还没被取走：队列满
+                count.decrementAndGet();
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+        slots[index] = task;
+        // 发布：序号的 volatile 写保证消费者能看到槽位内容
+        sequences.set(index, pos + 1);
+        if (waiters.get() > 0) {
+            wakeUp();
+        }
+        return true;
+    }
+
+    private ChatTask dequeue() {
+        long pos = head.get();
+        int index;
+        while (true) {
+            index = (int) (pos & mask);
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = head.get();
+            } else if (diff < 0) {
+                return null;
+            } else {
+                pos = head.get();
+            }
+        }
+        ChatTask task = slots[index];
+        slots[index] = null;
+        // 槽位留给下一圈的生产者
+        sequences.set(index, pos + mask + 1);
+        return task;
+    }
+
+    @Override
+    public ChatTask poll(long timeout, TimeUnit unit, Predicate<String> admit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int idle = 0;
+        while (true) {
+            // 在检查等待区之前读取，此后的 signal() 会让 block() 不再挂起
+            long signalled = signals.get();
+            if (deferredCount > 0) {
+                ChatTask task = pollDeferred(admit);
+                if (task != null) {
+                    count.decrementAndGet();
+                    return task;
+                }
+            }
+            ChatTask task = dequeue();
+            if (task != null) {
+                if (admitOrDefer(task, admit)) {
+                    count.decrementAndGet();
+                    return task;
+                }
+                idle = 0;
+                continue;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            idle = idle(idle, remaining, signalled);
+        }
+    }
+
+    /**
+     * 环形队列取出的任务：模型可接纳且没有同模型的任务在等待，直接执行；否则排到该模型的等待区
+     */
+    private boolean admitOrDefer(ChatTask task, Predicate<String> admit) {
+        synchronized (deferred) {
+            ArrayDeque<ChatTask> waiting = deferred.get(task.getModel());
+            if (waiting == null && admit.test(task.getModel())) {
+                return true;
+            }
+            if (waiting == null) {
+                waiting = new ArrayDeque<>();
+                deferred.put(task.getModel(), waiting);
+            }
+            waiting.addLast(task);
+            deferredCount++;
+            return false;
+        }
+    }
+
+    private ChatTask pollDeferred(Predicate<String> admit) {
+        synchronized (deferred) {
+            Iterator<Map.Entry<String, ArrayDeque<ChatTask>>> it = deferred.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, ArrayDeque<ChatTask>> entry = it.next();
+                if (admit.test(entry.getKey())) {
+                    ChatTask task = entry.getValue().pollFirst();
+                    if (entry.getValue().isEmpty()) {
+                        it.remove();
+                    }
+                    deferredCount--;
+                    return task;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 没有可出队的任务时等待一次，返回累计空转次数
+     */
+    private int idle(int idle, long remainingNanos, long signalled) throws InterruptedException {
+        switch (waitStrategy) {
+            case BUSY_SPIN -> Thread.onSpinWait();
+            case YIELDING -> {
+                if (idle < SPIN_TRIES) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+            }
+            case SLEEPING -> {
+                if (idle < SPIN_TRIES) {
+                    Thread.onSpinWait();
+                } else if (idle < SPIN_TRIES + YIELD_TRIES) {
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(Math.min(remainingNanos, SLEEP_NANOS));
+                }
+            }
+            case BLOCKING -> block(remainingNanos, signalled);
+        }
+        return idle + 1;
+    }
+
+    private void block(long remainingNanos, long signalled) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            // 先登记再复查，与生产者的 "先发布再检查等待者"、signal() 的 "先计数再检查等待者" 配对，不会丢唤醒
+            waiters.incrementAndGet();
+            if (signals.get() == signalled && isRingEmpty()) {
+                notEmpty.awaitNanos(remainingNanos);
+            }
+        } finally {
+            waiters.decrementAndGet();
+            lock.unlock();
+        }
+    }
+
+    private boolean isRingEmpty() {
+        long pos = head.get();
+        return sequences.get((int) (pos & mask)) != pos + 1;
+    }
+
+    private void wakeUp() {
+        lock.lock();
+        try {
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void signal() {
+        // 自旋类策略会自行复查等待区
+        if (deferredCount > 0) {
+            signals.incrementAndGet();
+            if (waiters.get() > 0) {
+                wakeUp();
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        // 入队失败的占位会短暂计入
+        return Math.min(capacity, count.get());
+    }
+
+    @Override
+    public Map<String, Integer> depths() {
+        Map<String, Integer> depths = new LinkedHashMap<>();
+        depths.put("ring", (int) Math.max(0, tail.get() - head.get()));
+        synchronized (deferred) {
+            deferred.forEach((model, waiting) -> depths.put("deferred/" + model, waiting.size()));
+        }
+        return depths;
+    }
+
+    /**
+     * 头尾指针各占一个缓存行，避免生产者与消费者互相失效对方的缓存 (伪共享)
+     */
+    @SuppressWarnings("unused")
+    private static final class PaddedAtomicLong extends AtomicLong {
+        long p1, p2, p3, p4, p5, p6, p7;
+    }
+
+    @SuppressWarnings("unused")
+    private static final class PaddedAtomicInteger extends AtomicInteger {
+        long p1, p2, p3, p4, p5, p6, p7;
+    }
+}
@@ -1,21 +1,43 @@
 package com.mooncell.gateway.core.task;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mooncell.gateway.core.balancer.ConcurrencyLimitProperties;
+import com.mooncell.gateway.core.balancer.InstanceBusyException;
 import com.mooncell.gateway.core.balancer.LoadBalancer;
 import com.mooncell.gateway.core.balancer.ResourceLockManager;
+import com.mooncell.gateway.core.cache.ResponseCache;
+import com.mooncell.gateway.core.model.LatencyTracker;
 import com.mooncell.gateway.core.model.ModelInstance;
+import com.mooncell.gateway.core.ratelimit.RateLimiter;
+import com.mooncell.gateway.core.stream.SseFrames;
 import com.mooncell.gateway.core.stream.StreamBridge;
-import jakarta.annotation.PostConstruct;
+import com.mooncell.gateway.core.stream.StreamCancelledException;
+import com.mooncell.gateway.core.upstream.UpstreamClientRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.util.retry.Retry;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * 单个任务的执行逻辑：抢占 -> 选实例 -> 加锁 -> 调用上游并桥接 SSE (可选对冲，首字节前失败自动换实例) -> ACK
+ * 出队与并发控制由 {@link TaskDispatcher} 负责
+ */
 @Service
 @Slf4j
 @RequiredArgsConstructor
@@ -25,96 +47,343 @@ public class TaskConsumer {
     private final LoadBalancer loadBalancer;
     private final ResourceLockManager lockManager;
     private final StreamBridge streamBridge;
-    private final WebClient.Builder webClientBuilder;
-    private final ObjectMapper objectMapper;
-
-    private final ExecutorService executor = Executors.newFixedThreadPool(20);
-
-    @PostConstruct
-    public void start() {
-        new Thread(this::consumeLoop, "TaskConsumer-Thread").start();
-    }
-
-    private void consumeLoop() {
-        while (true) {
-            try {
-                ChatTask task = taskManager.take();
-                executor.submit(() -> processTask(task));
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
-            } catch (Exception e) {
-                log.error("Error in consumer loop", e);
-            }
+    private final UpstreamClientRegistry clientRegistry;
+    private final Scheduler jdbcScheduler;
+    private final HedgingPolicy hedgingPolicy;
+    private final ConcurrencyLimitProperties limitProperties;
+    private final RateLimiter rateLimiter;
+    private final ResponseCache responseCache;
+
+    // SSE 直通：上游 DataBuffer 不经 String 解码直接交给客户端连接
+    @Value("${mooncell.stream.passthrough:true}")
+    private boolean passthrough;
+
+    // 首字节交付客户端之前失败时，最多再换几个实例重试
+    @Value("${mooncell.failover.max-attempts:2}")
+    private int maxFailovers;
+
+    /**
+     * 执行任务，返回的 Mono 在上游流结束 (完成/失败/取消) 后完成，且不会以错误结束
+     */
+    public Mono<Void> process(ChatTask task) {
+        // 抢占任务：等待 CAS 结果 (不阻塞线程)，保证同一任务只被执行一次
+        return Mono.fromFuture(() -> taskManager.claim(task.getId()))
+                // CAS 结果在状态流水写线程上回调，切走以免占用写线程；选实例可能触发缓存加载 (DB)
+                .publishOn(jdbcScheduler)
+                .flatMap(claimed -> {
+                    if (!claimed) {
+                        // 例如客户端在任务开始前已断开 (PENDING -> CANCELLED)，或恢复/回收重复入队的任务
+                        log.warn("Task {} status invalid, skip", task.getId());
+                        abandonCache(task);
+                        closeStream(task, new IllegalStateException("Task " + task.getId() + " is no longer pending"));
+                        return Mono.empty();
+                    }
+                    return Mono.defer(() -> stream(task));
+                })
+                .onErrorResume(e -> {
+                    log.error("Failed to claim task: " + task.getId(), e);
+                    abandonCache(task);
+                    closeStream(task, e);
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * 任务没有在这里执行：结束已打开的流 (已取消或已结束的流不受影响)，客户端不再挂起，流按保留期释放；
+     * 同一任务的另一份副本正在本进程执行时共用同一个流，不能结束
+     */
+    private void closeStream(ChatTask task, Throwable cause) {
+        if (!taskManager.runningTasks().contains(task.getId())) {
+            streamBridge.error(task.getId(), cause);
         }
     }
 
-    private void processTask(ChatTask task) {
-        if (!taskManager.updateStatus(task.getId(), "PENDING", "RUNNING")) {
-            log.warn("Task {} status invalid, skip", task.getId());
-            return;
+    private Mono<Void> stream(ChatTask task) {
+        // 请求体在入口处已校验，这里原样转发，不再解析
+        byte[] body = task.getRequestBody();
+
+        // 客户端断开 / 缓冲区溢出时取消上游订阅
+        return shared(task, streamBridge.cancellable(task.getId(), execute(task, body, new Attempts(), 0)))
+                .doOnNext(chunk -> streamBridge.emit(task.getId(), chunk))
+                .doOnComplete(() -> {
+                    streamBridge.complete(task.getId());
+                    taskManager.updateStatusAsync(task.getId(), "RUNNING", "COMPLETED");
+                })
+                .doOnError(e -> {
+                    streamBridge.error(task.getId(), e);
+                    if (e instanceof StreamCancelledException) {
+                        // 客户端原因，不计入实例失败
+                        log.info(e.getMessage());
+                        taskManager.updateStatusAsync(task.getId(), "RUNNING", "CANCELLED");
+                    } else {
+                        log.error("Task {} failed: {}", task.getId(), e.getMessage());
+                        taskManager.updateStatusAsync(task.getId(), "RUNNING", "FAILED");
+                    }
+                })
+                .then()
+                .onErrorResume(e -> Mono.empty());
+    }
+
+    /**
+     * 本任务是响应缓存的 leader 时，把输出同步给合并的请求，正常结束后写入缓存
+     */
+    private Flux<DataBuffer> shared(ChatTask task, Flux<DataBuffer> upstream) {
+        String key = task.getCacheKey();
+        if (key == null) {
+            return upstream;
         }
+        return upstream
+                .doOnNext(chunk -> responseCache.append(key, chunk))
+                .doOnComplete(() -> responseCache.complete(key))
+                .doOnError(e -> {
+                    if (e instanceof StreamCancelledException) {
+                        // leader 自己的客户端断开：合并的请求自行重新提交，而不是跟着失败
+                        responseCache.abandon(key);
+                    } else {
+                        responseCache.fail(key, e);
+                    }
+                })
+                // 停机时调度器取消在途任务
+                .doOnCancel(() -> responseCache.abandon(key));
+    }
 
-        ModelInstance instance = null;
-        boolean asyncStarted = false; // 标记是否成功进入异步流
+    private void abandonCache(ChatTask task) {
+        if (task.getCacheKey() != null) {
+            responseCache.abandon(task.getCacheKey());
+        }
+    }
 
-        try {
-            JsonNode requestJson = objectMapper.readTree(task.getRequestJson());
-            
-            instance = loadBalancer.next(task.getModel());
-            
-            // Fast Fail at Lock Acquisition
-            if (!lockManager.tryLock(instance)) {
-                throw new RuntimeException("Server Busy: Resource limit reached for " + instance.getUrl());
+    /**
+     * 执行一轮请求 (开启对冲时，首 token 超时后向另一个实例发出同样的请求，先出数据者胜出，另一个被取消)；
+     * 在任何字节交付给客户端之前失败，则换一个实例重试 (故障转移)
+     */
+    private Flux<DataBuffer> execute(ChatTask task, byte[] body, Attempts attempts, int retry) {
+        Flux<DataBuffer> round = attempt(task, body, attempts);
+        if (hedgingPolicy.enabledFor(task.getModel())) {
+            // 主请求已因请求本身的问题 (4xx) 失败时不再对冲：延迟被打断，对冲源直接结束
+            Flux<DataBuffer> hedge = Mono.delay(hedgingPolicy.delayFor(task.getModel()))
+                    .takeUntilOther(attempts.fatalSignal.asMono())
+                    .flatMapMany(tick -> {
+                        log.info("Task {} first token timed out, sending hedged request", task.getId());
+                        return attempt(task, body, attempts);
+                    });
+            round = Flux.firstWithValue(round, hedge)
+                    // 所有源都失败时 firstWithValue 以 NoSuchElementException 结束，需取出真实错误再分类
+                    .onErrorMap(TaskConsumer::unwrap);
+        }
+        return round
+                .doOnNext(chunk -> attempts.started = true)
+                .onErrorResume(e -> {
+                    // 任一实例返回不可重试的错误 (请求本身有问题)，换实例也没用
+                    if (attempts.started || retry >= maxFailovers || !retryable(e) || attempts.fatalError != null) {
+                        return Flux.error(e);
+                    }
+                    log.warn("Task {} failed before first byte ({}), failing over", task.getId(), e.getMessage());
+                    taskManager.recordRetryAsync(task.getId());
+                    return execute(task, body, attempts, retry + 1);
+                });
+    }
+
+    /**
+     * 向一个实例发出请求：选实例 (占用熔断器许可) -> 加锁 -> 调用上游；
+     * 无论完成、失败还是被取消 (对冲落败 / 客户端断开)，都会结算熔断器许可并释放锁
+     */
+    private Flux<DataBuffer> attempt(ChatTask task, byte[] body, Attempts attempts) {
+        return acquire(task, body, attempts)
+                .flatMapMany(instance -> call(task, body, instance))
+                .doOnError(e -> {
+                    if (!retryable(e)) {
+                        attempts.fatal(e);
+                    }
+                });
+    }
+
+    /**
+     * 选实例并占用其并发许可与速率配额；所有实例都满载 (或配额用完) 时定期重试 (不占用线程)，
+     * 超时后以 {@link InstanceBusyException} 失败
+     */
+    private Mono<ModelInstance> acquire(ChatTask task, byte[] body, Attempts attempts) {
+        Duration interval = Duration.ofMillis(limitProperties.getAcquireRetryIntervalMs());
+        long retries = limitProperties.getAcquireTimeoutMs() / Math.max(1, interval.toMillis());
+        long tokens = rateLimiter.estimateTokens(body.length, task.getMaxTokens());
+        return Mono.fromCallable(() -> {
+                    ModelInstance instance = loadBalancer.next(task.getModel(), attempts.tried);
+                    if (!lockManager.tryLock(instance)) {
+                        // 本地限流，不归因于实例
+                        instance.getBreaker().release();
+                        throw new InstanceBusyException(instance.getUrl());
+                    }
+                    if (!rateLimiter.tryAcquireInstance(instance.getUrl(), tokens)) {
+                        // 实例本分钟配额已用完，同样按满载处理
+                        lockManager.release(instance);
+                        instance.getBreaker().release();
+                        throw new InstanceBusyException(instance.getUrl());
+                    }
+                    attempts.tried.add(instance.getUrl());
+                    return instance;
+                })
+                .retryWhen(Retry.fixedDelay(retries, interval)
+                        .filter(InstanceBusyException.class::isInstance)
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+    }
+
+    private Flux<DataBuffer> call(ChatTask task, byte[] body, ModelInstance instance) {
+        StreamTimer timer = new StreamTimer(instance, hedgingPolicy.ttftOf(task.getModel()));
+
+        return Flux.defer(() -> body(request(instance, body)))
+                .doOnSubscribe(s -> timer.start())
+                .doOnNext(chunk -> timer.chunk())
+                .doOnComplete(() -> {
+                    instance.recordSuccess(timer.finish());
+                    instance.getBreaker().onSuccess(timer.firstChunkNanos() / 1_000_000);
+                    lockManager.onSuccess(instance, timer.firstChunkNanos());
+                })
+                .doOnError(e -> {
+                    log.warn("Upstream {} failed for task {}: {}", instance.getUrl(), task.getId(), e.getMessage());
+                    if (retryable(e)) {
+                        // 限流 / 超时 / 上游故障：计入实例失败，收缩该实例的并发上限
+                        instance.recordFailure();
+                        instance.getBreaker().onError();
+                        lockManager.onDropped(instance);
+                    } else {
+                        // 请求本身的问题 (4xx)：实例是健康的，归还半开许可而不是计为失败
+                        instance.getBreaker().release();
+                    }
+                })
+                // 对冲落败或客户端断开，不计入实例失败
+                .doOnCancel(() -> instance.getBreaker().release())
+                // 异步流结束 (含取消) 时立即释放锁
+                .doFinally(signal -> lockManager.release(instance));
+    }
+
+    // 请求体字节直接写出 (ByteArrayEncoder)，不经过 JSON 编码
+    private WebClient.ResponseSpec request(ModelInstance instance, byte[] body) {
+        return clientRegistry.client(instance)
+                .post()
+                .uri(buildTargetUrl(instance))
+                .headers(h -> {
+                    h.setBearerAuth(instance.getApiKey());
+                    if ("azure".equalsIgnoreCase(instance.getProviderName())) {
+                        h.set("api-key", instance.getApiKey());
+                    }
+                })
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(body)
+                .retrieve();
+    }
+
+    /**
+     * 客户端请求本身有问题 (4xx，限流/超时除外) 时换实例也没用，也不说明实例过载
+     */
+    private static boolean retryable(Throwable e) {
+        if (e instanceof WebClientResponseException re && re.getStatusCode().is4xxClientError()) {
+            int status = re.getStatusCode().value();
+            return status == 408 || status == 429;
+        }
+        return true;
+    }
+
+    /**
+     * 直通模式：上游字节原样转发，不做字符串解码；
+     * 解码模式：按 SSE 解析出 data 再重新组帧 (仅在需要检查帧内容时开启)
+     */
+    private Flux<DataBuffer> body(WebClient.ResponseSpec response) {
+        if (passthrough) {
+            return response.bodyToFlux(DataBuffer.class);
+        }
+        return response.bodyToFlux(String.class).map(SseFrames::data);
+    }
+
+    /**
+     * 单个流的计时：订阅上游 (发出请求) -> 首个 chunk 为 TTFT，之后相邻 chunk 的间隔为 token 间隔
+     * 回调由 Reactor 串行调用，无需同步
+     */
+    private static final class StreamTimer {
+        private final ModelInstance instance;
+        private final LatencyTracker modelTtft;
+        private long start;
+        private long first;
+        private long last;
+
+        StreamTimer(ModelInstance instance, LatencyTracker modelTtft) {
+            this.instance = instance;
+            this.modelTtft = modelTtft;
+        }
+
+        void start() {
+            start = System.nanoTime();
+        }
+
+        void chunk() {
+            long now = System.nanoTime();
+            if (last == 0) {
+                first = now;
+                instance.getTtft().record(now - start);
+                modelTtft.record(now - start);
+            } else {
+                instance.getInterTokenGap().record(now - last);
             }
+            last = now;
+        }
+
+        /**
+         * 首个 chunk 的时间 (纳秒)，空流按整个流计
+         */
+        long firstChunkNanos() {
+            return (last == 0 ? System.nanoTime() : first) - start;
+        }
+
+        /**
+         * 记录整个流的耗时，返回毫秒
+         */
+        long finish() {
+            long duration = System.nanoTime() - start;
+            instance.getStreamDuration().record(duration);
+            return duration / 1_000_000;
+        }
+    }
+
+    /**
+     * 同一任务的各次尝试共享的状态 (对冲请求可能在另一个线程上并发修改)
+     */
+    private static final class Attempts {
+        final Set<String> tried = ConcurrentHashMap.newKeySet();
+        volatile boolean started;
+        // 第一个不可重试的错误 (之后不再对冲、不再故障转移)
+        volatile Throwable fatalError;
+        final Sinks.One<Throwable> fatalSignal = Sinks.one();
+
+        void fatal(Throwable e) {
+            fatalError = e;
+            fatalSignal.tryEmitValue(e);
+        }
+    }
 
-            String targetUrl = buildTargetUrl(instance);
-            ModelInstance finalInstance = instance;
-
-            webClientBuilder.build()
-                    .post()
-                    .uri(targetUrl)
-                    .headers(h -> {
-                        h.setBearerAuth(finalInstance.getApiKey());
-                        if ("azure".equalsIgnoreCase(finalInstance.getProviderName())) {
-                            h.set("api-key", finalInstance.getApiKey());
-                        }
-                    })
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .bodyValue(requestJson)
-                    .retrieve()
-                    .bodyToFlux(String.class)
-                    .doOnNext(chunk -> streamBridge.emit(task.getId(), chunk))
-                    .doOnComplete(() -> {
-                        streamBridge.complete(task.getId());
-                        taskManager.updateStatus(task.getId(), "RUNNING", "COMPLETED");
-                        finalInstance.recordSuccess(0);
-                    })
-                    .doOnError(e -> {
-                        streamBridge.error(task.getId(), e);
-                        taskManager.updateStatus(task.getId(), "RUNNING", "FAILED");
-                        finalInstance.recordFailure();
-                    })
-                    .doOnTerminate(() -> {
-                        // 异步流结束时释放锁
-                        lockManager.release(finalInstance);
-                    })
-                    .subscribe();
-            
-            asyncStarted = true;
-
-        } catch (Exception e) {
-            log.error("Task failed synchronously: " + task.getId(), e);
-            taskManager.updateStatus(task.getId(), "RUNNING", "FAILED");
-            streamBridge.error(task.getId(), e);
-            
-            // 如果还没开始异步流，说明是在同步阶段挂了，需要手动释放锁
-            if (!asyncStarted && instance != null) {
-                lockManager.release(instance);
+    /**
+     * firstWithValue 全部失败时取出各源的真实错误：优先不可重试的 (例如 400，原样返回给客户端)，否则取最后一个
+     * (没有发出请求就结束的对冲源记为 "completed empty"，跳过)
+     */
+    private static Throwable unwrap(Throwable e) {
+        if (!(e instanceof NoSuchElementException)) {
+            return e;
+        }
+        List<Throwable> causes = new ArrayList<>(List.of(e.getSuppressed()));
+        if (e.getCause() != null) {
+            // Reactor 3.6 把各源的错误放在 cause (CompositeException) 中
+            causes.addAll(Exceptions.unwrapMultiple(e.getCause()));
+        }
+        Throwable last = e;
+        for (Throwable cause : causes) {
+            if (!retryable(cause)) {
+                return cause;
+            }
+            if (!(cause instanceof NoSuchElementException)) {
+                last = cause;
             }
         }
+        return last;
     }
-    
+
     private String buildTargetUrl(ModelInstance instance) {
         String base = instance.getUrl();
         if (!base.endsWith("/chat/completions") && !"azure".equalsIgnoreCase(instance.getProviderName())) {
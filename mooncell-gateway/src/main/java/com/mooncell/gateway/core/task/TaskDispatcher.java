@@ -0,0 +1,16 @@
+package com.mooncell.gateway.core.task;
+
+/**
+ * 任务调度器 SPI：负责从 {@link TaskManager} 出队，并在全局/单模型并发上限内交给 {@link TaskConsumer} 执行
+ * 实现由 mooncell.dispatcher.type 选择
+ */
+public interface TaskDispatcher {
+
+    void start();
+
+    /**
+     * 停止出队，等待在途任务结束 (最多 shutdown-timeout-ms)，超时后取消剩余任务
+     * 尚未出队的任务仍是 PENDING，重启后由恢复流程重新入队
+     */
+    void stop();
+}
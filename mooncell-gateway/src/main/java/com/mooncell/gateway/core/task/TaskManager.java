@@ -1,100 +1,258 @@
 package com.mooncell.gateway.core.task;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.mooncell.gateway.api.OpenAiRequest;
+import com.mooncell.gateway.api.ChatRequest;
+import com.mooncell.gateway.core.cache.ResponseCache;
 import com.mooncell.gateway.core.dao.TaskMapper;
+import com.mooncell.gateway.core.ratelimit.RateLimitedException;
+import com.mooncell.gateway.core.ratelimit.RateLimiter;
+import com.mooncell.gateway.core.stream.StreamBridge;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
-import java.util.List;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class TaskManager {
 
+    public static final String DEFAULT_TENANT = "default";
+    public static final String ANONYMOUS = "anonymous";
+
     private final TaskMapper taskMapper;
-    private final ObjectMapper objectMapper;
-    
-    // 内存阻塞队列
-    private final BlockingQueue<ChatTask> taskQueue = new LinkedBlockingQueue<>(10000);
+    private final TaskWalWriter walWriter;
+    private final TaskStatusJournal statusJournal;
+    private final StreamBridge streamBridge;
+    private final RateLimiter rateLimiter;
+    private final ResponseCache responseCache;
+    private final IdempotencyIndex idempotencyIndex;
+    private final Scheduler jdbcScheduler;
+
+    // 内存任务队列 (按 优先级/模型/租户 公平出队)
+    private final TaskQueue taskQueue;
+
+    // 本进程执行中的任务 (RUNNING)，由 TaskRecovery 定期刷新其租约心跳
+    private final Set<String> runningTasks = ConcurrentHashMap.newKeySet();
 
     @PostConstruct
-    public void recover() {
-        log.info("Recovering pending tasks from database...");
-        List<ChatTask> pendingTasks = taskMapper.findPendingTasks();
-        for (ChatTask task : pendingTasks) {
-            if (taskQueue.offer(task)) {
-                log.info("Recovered task: {}", task.getId());
-            } else {
-                log.warn("Queue full during recovery, task {} skipped", task.getId());
+    public void init() {
+        // 客户端断开 (宽限期内未重连) 时，尚未执行的任务直接标记为 CANCELLED
+        streamBridge.onCancel(this::cancel);
+    }
+
+    /**
+     * 恢复/回收的任务重新入队 (由 TaskRecovery 调用)，队列满时返回 false，任务保持 PENDING 由调用方稍后重试
+     */
+    public boolean requeue(ChatTask task) {
+        if (task.getMaxTokens() == null) {
+            // 恢复的任务只有请求体：重新扫描一次取出 max_tokens (实例配额估算用)
+            try {
+                task.setMaxTokens(ChatRequest.parse(task.getRequestBody()).getMaxTokens());
+            } catch (IOException e) {
+                log.warn("Recovered task {} has a malformed request body: {}", task.getId(), e.getMessage());
             }
         }
+        // 为恢复的任务建流，客户端可通过 /v1/tasks/{id}/stream 重新订阅
+        streamBridge.open(task.getId());
+        if (taskQueue.offer(task)) {
+            return true;
+        }
+        streamBridge.discard(task.getId());
+        return false;
+    }
+
+    public int queueSize() {
+        return taskQueue.size();
+    }
+
+    public Set<String> runningTasks() {
+        return runningTasks;
     }
 
-    public String submit(OpenAiRequest request) {
+    /**
+     * 提交任务 (限流 -> 幂等检查 -> WAL 持久化 -> 入队)，全程不阻塞调用线程：
+     * DB 查询运行在 jdbcScheduler 上，WAL 写入由组提交线程异步 ACK
+     * cacheKey 非空表示调用方是响应缓存的 leader，没有产生新任务时放弃 leader 身份
+     */
+    public Mono<String> submit(ChatRequest request, String apiKey, String cacheKey) {
+        RateLimiter.Admission admission;
+        try {
+            // 0. 限流：超限直接 429，不产生任何 DB 读写
+            long tokens = rateLimiter.estimateTokens(request.getBody().length, request.getMaxTokens());
+            admission = rateLimiter.checkSubmit(apiKey == null ? ANONYMOUS : apiKey, request.getModel(), tokens);
+        } catch (RateLimitedException e) {
+            abandonCache(cacheKey);
+            return Mono.error(e);
+        }
+
         // 1. 幂等性检查
         String idempotencyKey = request.getIdempotencyKey();
-        if (idempotencyKey != null) {
-            ChatTask existing = taskMapper.findByIdempotencyKey(idempotencyKey);
-            if (existing != null) {
-                log.info("Idempotent hit: {}", idempotencyKey);
-                return existing.getId();
-            }
-        } else {
+        Mono<String> submitted;
+        if (idempotencyKey == null) {
             // 如果没有传，生成一个默认的避免空指针，或者允许为 null
-            idempotencyKey = UUID.randomUUID().toString();
+            submitted = persistAndEnqueue(request, UUID.randomUUID().toString(), cacheKey, admission);
+        } else {
+            submitted = findExisting(idempotencyKey)
+                    .doOnNext(id -> {
+                        log.info("Idempotent hit: {}", idempotencyKey);
+                        // 重放的提交不产生新任务，不占用限流配额
+                        admission.refund();
+                        abandonCache(cacheKey);
+                    })
+                    .switchIfEmpty(Mono.defer(() -> persistAndEnqueue(request, idempotencyKey, cacheKey, admission)
+                            // WAL 已落库，登记到幂等索引
+                            .doOnNext(id -> recordKey(idempotencyKey, id))));
         }
+        return submitted
+                .doOnError(e -> abandonCache(cacheKey))
+                // 客户端在提交完成前断开，任务不会入队
+                .doOnCancel(() -> abandonCache(cacheKey));
+    }
 
-        String taskId = UUID.randomUUID().toString();
-        try {
-            String json = objectMapper.writeValueAsString(request);
-            
-            ChatTask task = ChatTask.builder()
-                    .id(taskId)
-                    .idempotencyKey(idempotencyKey)
-                    .model(request.getModel())
-                    .requestJson(json)
-                    .status("PENDING")
-                    .build();
-            
-            // 2. 持久化 (WAL) - 处理并发冲突
-            try {
-                taskMapper.insert(task);
-            } catch (DuplicateKeyException e) {
-                // 并发情况下可能刚查没有，现在有了
-                ChatTask existing = taskMapper.findByIdempotencyKey(idempotencyKey);
-                if (existing != null) return existing.getId();
-                throw e;
+    private void abandonCache(String cacheKey) {
+        if (cacheKey != null) {
+            responseCache.abandon(cacheKey);
+        }
+    }
+
+    private Mono<String> persistAndEnqueue(ChatRequest request, String idempotencyKey, String cacheKey,
+                                           RateLimiter.Admission admission) {
+        ChatTask task = ChatTask.builder()
+                .id(UUID.randomUUID().toString())
+                .idempotencyKey(idempotencyKey)
+                .model(request.getModel())
+                .requestBody(request.getBody())
+                .status("PENDING")
+                .priority(TaskPriority.of(request.getPriority()))
+                .tenant(request.getTenant() == null ? DEFAULT_TENANT : request.getTenant())
+                .cacheKey(cacheKey)
+                .maxTokens(request.getMaxTokens())
+                .build();
+
+        // 2. 持久化 (WAL) - 组提交，所在批次落库后才继续；3. 建流 (先于客户端订阅，早到的数据不会丢)；4. 入队
+        return Mono.fromFuture(() -> walWriter.append(task))
+                // ACK 在 WAL 写线程上回调：切走后再建流、入队、回调调用方，不拖慢下一次组提交
+                .publishOn(Schedulers.parallel())
+                .then(Mono.fromCallable(() -> enqueue(task)))
+                .onErrorResume(DuplicateKeyException.class,
+                        // 并发情况下可能刚查没有，现在有了 (或布隆过滤器漏判)：键确实冲突，查库
+                        e -> findInDatabase(idempotencyKey)
+                                .doOnNext(id -> {
+                                    admission.refund();
+                                    abandonCache(cacheKey);
+                                })
+                                .switchIfEmpty(Mono.error(e)))
+                .doOnError(e -> log.error("Failed to submit task", e));
+    }
+
+    private String enqueue(ChatTask task) {
+        streamBridge.open(task.getId());
+        if (!taskQueue.offer(task)) {
+            streamBridge.discard(task.getId());
+            // 队列 (或该 优先级/模型/租户 的子队列) 满，系统过载。
+            // 标记为 FAILED，避免下次恢复时积压，或者让客户端重试
+            updateStatusAsync(task.getId(), "PENDING", "FAILED");
+            throw new RuntimeException("System Busy: Task queue full");
+        }
+        return task.getId();
+    }
+
+    /**
+     * 查找幂等键对应的已有任务：先查内存索引 (缓存命中或布隆过滤器判定没见过都不查库)，只有可能冲突的键才查库
+     */
+    private Mono<String> findExisting(String idempotencyKey) {
+        if (idempotencyIndex.isEnabled()) {
+            String cached = idempotencyIndex.get(idempotencyKey);
+            if (cached != null) {
+                return Mono.just(cached);
             }
-            
-            // 3. 入队
-            if (!taskQueue.offer(task)) {
-                // 队列满，系统过载。
-                // 标记为 FAILED，避免下次恢复时积压，或者让客户端重试
-                taskMapper.compareAndSetStatus(taskId, "PENDING", "FAILED");
-                throw new RuntimeException("System Busy: Task queue full");
+            if (idempotencyIndex.classify(idempotencyKey) == IdempotencyIndex.Lookup.NEW) {
+                return Mono.empty();
             }
-            
-            return taskId;
-        } catch (Exception e) {
-            log.error("Failed to submit task", e);
-            throw new RuntimeException(e);
+        }
+        return findInDatabase(idempotencyKey);
+    }
+
+    private Mono<String> findInDatabase(String idempotencyKey) {
+        return Mono.fromCallable(() -> taskMapper.findByIdempotencyKey(idempotencyKey))
+                .subscribeOn(jdbcScheduler)
+                .map(ChatTask::getId)
+                .doOnNext(id -> recordKey(idempotencyKey, id));
+    }
+
+    private void recordKey(String idempotencyKey, String taskId) {
+        if (idempotencyIndex.isEnabled()) {
+            idempotencyIndex.record(idempotencyKey, taskId);
         }
     }
     
-    public ChatTask take() throws InterruptedException {
-        return taskQueue.take();
+    // 限时出队，便于调度器在停机时及时退出；admit 检查并占用模型槽位，饱和模型的任务留在队列里
+    public ChatTask poll(long timeout, TimeUnit unit, Predicate<String> admit) throws InterruptedException {
+        return taskQueue.poll(timeout, unit, admit);
+    }
+
+    // 模型槽位释放后唤醒出队方
+    public void signal() {
+        taskQueue.signal();
+    }
+
+    // 各子队列积压数
+    public Map<String, Integer> queueDepths() {
+        return taskQueue.depths();
     }
     
-    // 使用 CAS 更新状态
-    public boolean updateStatus(String taskId, String expect, String next) {
-        return taskMapper.compareAndSetStatus(taskId, expect, next) > 0;
+    // 抢占任务 (PENDING -> RUNNING 的 CAS)，结果为 true 才允许执行，保证同一任务只被执行一次
+    public CompletableFuture<Boolean> claim(String taskId) {
+        return statusJournal.transition(taskId, "PENDING", "RUNNING")
+                .whenComplete((ok, e) -> {
+                    if (Boolean.TRUE.equals(ok)) {
+                        runningTasks.add(taskId);
+                    }
+                });
+    }
+
+    // 流被取消：尚未开始执行的任务直接标记为 CANCELLED，执行中的任务由上游取消流程迁移
+    public CompletableFuture<Boolean> cancel(String taskId) {
+        return statusJournal.transition(taskId, "PENDING", "CANCELLED")
+                .whenComplete((ok, e) -> {
+                    if (Boolean.TRUE.equals(ok)) {
+                        log.info("Task {} cancelled before execution", taskId);
+                    }
+                });
+    }
+
+    // 故障转移时累加重试次数 (低频，直接在 jdbcScheduler 上更新，不等待结果)
+    public void recordRetryAsync(String taskId) {
+        Mono.fromRunnable(() -> taskMapper.incrementRetryCount(taskId))
+                .subscribeOn(jdbcScheduler)
+                .subscribe(null, e -> log.error("Failed to update retry count of task {}", taskId, e));
+    }
+
+    // 异步 CAS 更新状态：只追加到状态流水，不阻塞调用线程 (用于 Reactor 回调中的终态迁移)
+    public CompletableFuture<Boolean> updateStatusAsync(String taskId, String expect, String next) {
+        if ("RUNNING".equals(expect)) {
+            runningTasks.remove(taskId);
+        }
+        return statusJournal.transition(taskId, expect, next)
+                .whenComplete((ok, e) -> {
+                    if (e != null) {
+                        log.error("Failed to update task {} status {} -> {}", taskId, expect, next, e);
+                    } else if (!ok) {
+                        log.warn("Task {} status CAS {} -> {} rejected", taskId, expect, next);
+                    }
+                });
     }
 }
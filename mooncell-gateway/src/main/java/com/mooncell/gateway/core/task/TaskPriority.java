@@ -0,0 +1,23 @@
+package com.mooncell.gateway.core.task;
+
+/**
+ * 任务优先级：交互式请求 (有人在等首 token) 与批量任务
+ */
+public enum TaskPriority {
+    INTERACTIVE,
+    BATCH;
+
+    /**
+     * 解析请求中的优先级，未传或无法识别时按交互式处理
+     */
+    public static TaskPriority of(String value) {
+        if (value != null) {
+            for (TaskPriority priority : values()) {
+                if (priority.name().equalsIgnoreCase(value)) {
+                    return priority;
+                }
+            }
+        }
+        return INTERACTIVE;
+    }
+}
@@ -0,0 +1,88 @@
+package com.mooncell.gateway.core.task;
+
+import com.mooncell.gateway.core.dao.TaskMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 任务表清理：定期把超过保留期的终态任务 (COMPLETED / FAILED / CANCELLED) 归档或删除，
+ * 按 (status, updated_at) 索引取一批 id，每批一个事务，每次运行有批数上限。
+ * 热表只剩执行中与近期的任务，恢复扫描和插入的索引维护不再随运行时间线性变慢。
+ * 归档后的任务不再占用幂等键。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TaskPurger {
+
+    private final TaskMapper taskMapper;
+    private final RetentionProperties properties;
+    private final TransactionTemplate transactionTemplate;
+
+    @Scheduled(initialDelayString = "${mooncell.task.retention.interval-ms:60000}",
+            fixedDelayString = "${mooncell.task.retention.interval-ms:60000}")
+    public void purge() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        try {
+            // updated_at 由数据库时钟写入，保留期也按数据库时钟计算，不受网关主机时钟偏差影响
+            LocalDateTime now = taskMapper.now();
+            int moved = purgeHot(now);
+            int dropped = purgeArchive(now);
+            if (moved > 0 || dropped > 0) {
+                log.info("Task retention: {} {} tasks, purged {} archived tasks",
+                        properties.getMode() == RetentionProperties.Mode.ARCHIVE ? "archived" : "deleted", moved, dropped);
+            }
+        } catch (Exception e) {
+            // 下一次运行会继续
+            log.warn("Task retention run failed: {}", e.getMessage());
+        }
+    }
+
+    private int purgeHot(LocalDateTime now) {
+        LocalDateTime cutoff = now.minusNanos(properties.getHotRetentionMs() * 1_000_000);
+        int batchSize = Math.max(1, properties.getBatchSize());
+        int total = 0;
+        for (int i = 0; i < properties.getMaxBatchesPerRun(); i++) {
+            Integer n = transactionTemplate.execute(status -> {
+                List<String> ids = taskMapper.findExpiredIds(cutoff, batchSize);
+                if (ids.isEmpty()) {
+                    return 0;
+                }
+                if (properties.getMode() == RetentionProperties.Mode.ARCHIVE) {
+                    taskMapper.archiveByIds(ids);
+                }
+                return taskMapper.deleteByIds(ids);
+            });
+            total += n == null ? 0 : n;
+            if (n == null || n < batchSize) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    private int purgeArchive(LocalDateTime now) {
+        if (properties.getArchiveRetentionMs() <= 0) {
+            return 0;
+        }
+        LocalDateTime cutoff = now.minusNanos(properties.getArchiveRetentionMs() * 1_000_000);
+        int batchSize = Math.max(1, properties.getBatchSize());
+        int total = 0;
+        for (int i = 0; i < properties.getMaxBatchesPerRun(); i++) {
+            int n = taskMapper.purgeArchive(cutoff, batchSize);
+            total += n;
+            if (n < batchSize) {
+                break;
+            }
+        }
+        return total;
+    }
+}
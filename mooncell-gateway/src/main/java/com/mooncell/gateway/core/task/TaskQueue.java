@@ -0,0 +1,34 @@
+package com.mooncell.gateway.core.task;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * 内存任务队列 (WAL 之后、调度器之前)
+ */
+public interface TaskQueue {
+
+    /**
+     * 入队，队列 (或任务所在的子队列) 已满时返回 false
+     */
+    boolean offer(ChatTask task);
+
+    /**
+     * 限时出队。admit 用于在出队前检查 (并占用) 模型的并发槽位：返回 false 的模型暂时跳过，
+     * 不会挡住其他模型的任务；返回 true 后任务必定被取出
+     */
+    ChatTask poll(long timeout, TimeUnit unit, Predicate<String> admit) throws InterruptedException;
+
+    /**
+     * 模型槽位被释放时调用，唤醒因模型饱和而等待的出队方
+     */
+    void signal();
+
+    int size();
+
+    /**
+     * 各子队列的积压数
+     */
+    Map<String, Integer> depths();
+}
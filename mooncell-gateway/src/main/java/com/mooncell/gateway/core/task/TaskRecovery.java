@@ -0,0 +1,199 @@
+package com.mooncell.gateway.core.task;
+
+import com.mooncell.gateway.core.dao.TaskMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 后台任务恢复：启动时不阻塞，网关先开始接收请求，再由单个后台线程
+ * <ul>
+ *     <li>按 (created_at, id) 游标分页读取启动前遗留的 PENDING 任务，逐条入队；队列达到 max-queue-fill 时等待消费，不丢弃</li>
+ *     <li>之后定期回收租约过期的 RUNNING 任务 (执行方崩溃或卡死)：条件 CAS 回到 PENDING 后重新入队</li>
+ * </ul>
+ * 执行中的任务由 {@link #heartbeat()} 定期刷新心跳；恢复进度见 /admin/recovery。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TaskRecovery {
+
+    private static final LocalDateTime CURSOR_START = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    public enum State { WAITING, RECOVERING, RECOVERED, STOPPED }
+
+    private final TaskMapper taskMapper;
+    private final TaskManager taskManager;
+    private final QueueProperties queueProperties;
+    private final RecoveryProperties properties;
+
+    private volatile State state = State.WAITING;
+    // 恢复范围的上界：之后提交的任务已由提交流程入队
+    private LocalDateTime before;
+    private final AtomicLong recovered = new AtomicLong();
+    private final AtomicLong reclaimed = new AtomicLong();
+    private volatile boolean running = true;
+    private Thread worker;
+
+    @PostConstruct
+    public void init() {
+        // 在 Web 服务启动前取 DB 时间，保证上界之前的任务都不是本进程提交的
+        before = taskMapper.now();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        worker = new Thread(this::run, "Task-Recovery");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            state = State.RECOVERING;
+            recoverPending();
+            state = State.RECOVERED;
+            log.info("Task recovery finished: {} pending tasks requeued", recovered.get());
+            while (running) {
+                TimeUnit.MILLISECONDS.sleep(properties.getReclaimIntervalMs());
+                try {
+                    reclaimExpired();
+                } catch (RuntimeException e) {
+                    // DB 暂时不可用 (连接中断、锁超时)：下一轮重试，回收线程不能退出
+                    log.warn("Lease reclamation failed, retrying in {}ms: {}", properties.getReclaimIntervalMs(), e.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        state = State.STOPPED;
+    }
+
+    private void recoverPending() throws InterruptedException {
+        log.info("Recovering pending tasks submitted before {}", before);
+        LocalDateTime afterCreated = CURSOR_START;
+        String afterId = "";
+        int pageSize = Math.max(1, properties.getPageSize());
+        int failures = 0;
+        while (running) {
+            List<ChatTask> page;
+            try {
+                page = taskMapper.findPendingPage(before, afterCreated, afterId, pageSize);
+                failures = 0;
+            } catch (RuntimeException e) {
+                // 游标不变，退避后重读同一页，已入队的任务不会重复
+                long delay = retryDelay(++failures);
+                log.warn("Reading pending tasks failed, retrying in {}ms: {}", delay, e.getMessage());
+                TimeUnit.MILLISECONDS.sleep(delay);
+                continue;
+            }
+            for (ChatTask task : page) {
+                if (offer(task)) {
+                    recovered.incrementAndGet();
+                }
+            }
+            if (page.size() < pageSize) {
+                return;
+            }
+            ChatTask last = page.get(page.size() - 1);
+            afterCreated = last.getCreatedAt();
+            afterId = last.getId();
+        }
+    }
+
+    /**
+     * 指数退避：从 backoff-ms 开始翻倍，不超过 reclaim-interval-ms
+     */
+    private long retryDelay(int failures) {
+        long base = Math.max(1, properties.getBackoffMs());
+        return Math.min(Math.max(base, properties.getReclaimIntervalMs()), base << Math.min(failures - 1, 16));
+    }
+
+    private void reclaimExpired() throws InterruptedException {
+        LocalDateTime cutoff = taskMapper.now().minusNanos(properties.getLeaseMs() * 1_000_000);
+        int pageSize = Math.max(1, properties.getPageSize());
+        String afterId = "";
+        while (running) {
+            List<String> stale = taskMapper.findStaleRunningIds(cutoff, afterId, pageSize);
+            List<String> ids = new ArrayList<>(stale.size());
+            for (String id : stale) {
+                // 本进程仍在执行的任务只是心跳延迟，不回收
+                if (!taskManager.runningTasks().contains(id) && taskMapper.reclaim(id, cutoff) > 0) {
+                    ids.add(id);
+                }
+            }
+            if (!ids.isEmpty()) {
+                log.warn("Reclaimed {} tasks with expired leases", ids.size());
+                for (ChatTask task : taskMapper.findPendingByIds(ids)) {
+                    if (offer(task)) {
+                        reclaimed.incrementAndGet();
+                    }
+                }
+            }
+            if (stale.size() < pageSize) {
+                return;
+            }
+            afterId = stale.get(stale.size() - 1);
+        }
+    }
+
+    /**
+     * 背压：恢复的任务最多占用队列的 max-queue-fill，超过时等待消费；停机时返回 false，任务留在 DB 中等下次恢复
+     */
+    private boolean offer(ChatTask task) throws InterruptedException {
+        int limit = (int) Math.max(1, queueProperties.getCapacity() * properties.getMaxQueueFill());
+        while (running) {
+            if (taskManager.queueSize() < limit && taskManager.requeue(task)) {
+                return true;
+            }
+            TimeUnit.MILLISECONDS.sleep(properties.getBackoffMs());
+        }
+        return false;
+    }
+
+    @Scheduled(fixedDelayString = "${mooncell.task.recovery.heartbeat-interval-ms:15000}")
+    public void heartbeat() {
+        List<String> ids = new ArrayList<>(taskManager.runningTasks());
+        if (ids.isEmpty()) {
+            return;
+        }
+        try {
+            int pageSize = Math.max(1, properties.getPageSize());
+            for (int i = 0; i < ids.size(); i += pageSize) {
+                taskMapper.heartbeat(ids.subList(i, Math.min(ids.size(), i + pageSize)));
+            }
+        } catch (Exception e) {
+            log.warn("Task heartbeat failed: {}", e.getMessage());
+        }
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("state", state);
+        status.put("recovered", recovered.get());
+        status.put("reclaimed", reclaimed.get());
+        status.put("running", taskManager.runningTasks().size());
+        return status;
+    }
+}
@@ -0,0 +1,174 @@
+package com.mooncell.gateway.core.task;
+
+import com.mooncell.gateway.core.dao.TaskMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 任务状态流水 (Status Journal)
+ * 状态迁移先写入内存缓冲，由专用写线程批量执行 CAS UPDATE (JDBC batch)。
+ * 同一批次内同一任务首尾相接的迁移 (如 PENDING->RUNNING->COMPLETED) 会被合并为一条
+ * PENDING->COMPLETED 的 CAS，成功时所有参与合并的调用方拿到同一个结果；
+ * 合并后的 CAS 失败时 (行已处于链中间的某个状态) 退回逐条判定，与不合并时的结果一致。
+ */
+@Slf4j
+@Component
+public class TaskStatusJournal extends BatchWriter<TaskStatusJournal.Transition> {
+
+    private final SqlSessionFactory sqlSessionFactory;
+    private final TaskMapper taskMapper;
+
+    public TaskStatusJournal(SqlSessionFactory sqlSessionFactory,
+                             TaskMapper taskMapper,
+                             @Value("${mooncell.task.status.batch-size:256}") int batchSize,
+                             @Value("${mooncell.task.status.flush-interval-ms:5}") long flushIntervalMs) {
+        super("TaskStatus-Journal", batchSize, flushIntervalMs);
+        this.sqlSessionFactory = sqlSessionFactory;
+        this.taskMapper = taskMapper;
+    }
+
+    /**
+     * 追加一次 CAS 状态迁移，Future 在所在批次提交后完成，结果为 CAS 是否成功
+     */
+    public CompletableFuture<Boolean> transition(String taskId, String expect, String next) {
+        Transition transition = new Transition(taskId, expect, next, new CompletableFuture<>());
+        if (!enqueue(transition)) {
+            transition.future.completeExceptionally(new IllegalStateException("Status journal is stopped"));
+        }
+        return transition.future;
+    }
+
+    @Override
+    protected void flush(List<Transition> batch) {
+        List<Chain> chains = coalesce(batch);
+
+        List<Integer> counts;
+        try {
+            counts = executeBatch(chains);
+        } catch (Exception e) {
+            // 批量失败：退化为逐条 CAS，保证每个调用方拿到自己的结果
+            log.warn("Status batch update failed, falling back to row-by-row: {}", e.getMessage());
+            for (Chain chain : chains) {
+                try {
+                    if (taskMapper.compareAndSetStatus(chain.taskId, chain.expect, chain.next) > 0) {
+                        chain.complete(true);
+                    } else {
+                        chain.replay(taskMapper);
+                    }
+                } catch (Exception rowError) {
+                    chain.completeExceptionally(rowError);
+                }
+            }
+            return;
+        }
+
+        for (int i = 0; i < chains.size(); i++) {
+            Chain chain = chains.get(i);
+            if (counts.get(i) > 0) {
+                chain.complete(true);
+                continue;
+            }
+            // 例如被拒绝的重复抢占 PENDING->RUNNING 与持有者的 RUNNING->COMPLETED 落在同一批：
+            // 合并后两条都会失败，逐条判定时持有者的迁移应当成功
+            try {
+                chain.replay(taskMapper);
+            } catch (Exception rowError) {
+                chain.completeExceptionally(rowError);
+            }
+        }
+        log.debug("Status journal flushed {} transitions as {} updates", batch.size(), chains.size());
+    }
+
+    /**
+     * 按任务分组，把 next == 下一条 expect 的相邻迁移折叠成一条
+     * 不能首尾相接的迁移保持原顺序，依然按 CAS 语义逐条判定
+     */
+    private List<Chain> coalesce(List<Transition> batch) {
+        Map<String, List<Chain>> byTask = new LinkedHashMap<>();
+        for (Transition t : batch) {
+            List<Chain> taskChains = byTask.computeIfAbsent(t.taskId, k -> new ArrayList<>(2));
+            Chain last = taskChains.isEmpty() ? null : taskChains.get(taskChains.size() - 1);
+            if (last != null && last.next.equals(t.expect)) {
+                last.next = t.next;
+                last.transitions.add(t);
+            } else {
+                taskChains.add(new Chain(t));
+            }
+        }
+        List<Chain> chains = new ArrayList<>(batch.size());
+        byTask.values().forEach(chains::addAll);
+        return chains;
+    }
+
+    private List<Integer> executeBatch(List<Chain> chains) {
+        try (SqlSession session = sqlSessionFactory.openSession(ExecutorType.BATCH, false)) {
+            TaskMapper batchMapper = session.getMapper(TaskMapper.class);
+            for (Chain chain : chains) {
+                batchMapper.compareAndSetStatus(chain.taskId, chain.expect, chain.next);
+            }
+            List<BatchResult> results = session.flushStatements();
+            session.commit();
+
+            // 同一条 SQL 的语句被合并在同一个 BatchResult 中，按提交顺序展开
+            List<Integer> counts = new ArrayList<>(chains.size());
+            for (BatchResult result : results) {
+                for (int count : result.getUpdateCounts()) {
+                    counts.add(count);
+                }
+            }
+            if (counts.size() != chains.size()) {
+                throw new IllegalStateException("Unexpected batch result size: " + counts.size() + " != " + chains.size());
+            }
+            return counts;
+        }
+    }
+
+    record Transition(String taskId, String expect, String next, CompletableFuture<Boolean> future) {
+    }
+
+    private static class Chain {
+        final String taskId;
+        final String expect;
+        String next;
+        final List<Transition> transitions = new ArrayList<>(2);
+
+        Chain(Transition first) {
+            this.taskId = first.taskId;
+            this.expect = first.expect;
+            this.next = first.next;
+            this.transitions.add(first);
+        }
+
+        void complete(boolean success) {
+            transitions.forEach(t -> t.future.complete(success));
+        }
+
+        /**
+         * 合并后的 CAS 失败：按原顺序逐条执行，每个调用方拿到自己的结果 (单条迁移不会再成功，直接判失败)
+         */
+        void replay(TaskMapper mapper) {
+            if (transitions.size() == 1) {
+                complete(false);
+                return;
+            }
+            for (Transition t : transitions) {
+                t.future.complete(mapper.compareAndSetStatus(t.taskId, t.expect, t.next) > 0);
+            }
+        }
+
+        void completeExceptionally(Throwable e) {
+            transitions.forEach(t -> t.future.completeExceptionally(e));
+        }
+    }
+}
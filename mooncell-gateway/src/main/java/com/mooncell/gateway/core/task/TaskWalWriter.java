@@ -0,0 +1,70 @@
+package com.mooncell.gateway.core.task;
+
+import com.mooncell.gateway.core.dao.TaskMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * WAL 组提交写入器 (Group Commit)
+ * 多个提交线程的 insert 先进入内存缓冲，由单个写线程按 "批量大小 / 时间窗口" 合并为一条多行 INSERT，
+ * 落库成功后才回调各提交方 (ACK)，保证 "先持久化、再入队" 的 WAL 语义不变。
+ */
+@Slf4j
+@Component
+public class TaskWalWriter extends BatchWriter<TaskWalWriter.PendingWrite> {
+
+    private final TaskMapper taskMapper;
+
+    public TaskWalWriter(TaskMapper taskMapper,
+                         @Value("${mooncell.task.wal.batch-size:128}") int batchSize,
+                         @Value("${mooncell.task.wal.flush-interval-ms:5}") long flushIntervalMs) {
+        super("TaskWal-Writer", batchSize, flushIntervalMs);
+        this.taskMapper = taskMapper;
+    }
+
+    /**
+     * 追加一条任务到 WAL，返回的 Future 在该任务所在批次提交后完成
+     * 若该任务写入失败 (如幂等键冲突)，Future 以对应异常结束
+     */
+    public CompletableFuture<Void> append(ChatTask task) {
+        PendingWrite write = new PendingWrite(task, new CompletableFuture<>());
+        if (!enqueue(write)) {
+            write.future.completeExceptionally(new IllegalStateException("WAL writer is stopped"));
+        }
+        return write.future;
+    }
+
+    @Override
+    protected void flush(List<PendingWrite> batch) {
+        List<ChatTask> tasks = new ArrayList<>(batch.size());
+        for (PendingWrite write : batch) {
+            tasks.add(write.task);
+        }
+
+        try {
+            // 一次往返 + 一次提交
+            taskMapper.insertBatch(tasks);
+            batch.forEach(write -> write.future.complete(null));
+            log.debug("WAL group commit flushed {} tasks", tasks.size());
+        } catch (Exception e) {
+            // 批量失败 (通常是某个幂等键冲突)：退化为逐行写入，把异常精确地归还给对应的提交方
+            log.debug("WAL batch insert failed, falling back to row-by-row: {}", e.getMessage());
+            for (PendingWrite write : batch) {
+                try {
+                    taskMapper.insert(write.task);
+                    write.future.complete(null);
+                } catch (Exception rowError) {
+                    write.future.completeExceptionally(rowError);
+                }
+            }
+        }
+    }
+
+    record PendingWrite(ChatTask task, CompletableFuture<Void> future) {
+    }
+}
@@ -0,0 +1,113 @@
+package com.mooncell.gateway.core.task;
+
+import com.mooncell.gateway.config.VirtualThreads;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 虚拟线程调度器：每个任务一个虚拟线程，线程内可以直接阻塞等待上游流结束
+ * 运行在 Java 17 上时退化为每任务一个平台线程
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "mooncell.dispatcher.type", havingValue = "virtual")
+public class VirtualThreadTaskDispatcher implements TaskDispatcher {
+
+    private final TaskManager taskManager;
+    private final TaskConsumer taskConsumer;
+    private final ModelConcurrencyLimiter modelLimiter;
+    private final DispatcherProperties properties;
+
+    private volatile boolean running;
+    private Semaphore inFlight;
+    private ExecutorService executor;
+    private Thread drainThread;
+
+    @Override
+    @PostConstruct
+    public void start() {
+        running = true;
+        inFlight = new Semaphore(properties.getConcurrency());
+        executor = VirtualThreads.newPerTaskExecutor().orElseGet(() -> {
+            log.warn("Virtual threads not supported on this JVM, falling back to one platform thread per task");
+            return Executors.newCachedThreadPool();
+        });
+        drainThread = new Thread(this::drainLoop, "TaskDispatcher-Drain");
+        drainThread.setDaemon(true);
+        drainThread.start();
+        log.info("Virtual-thread task dispatcher started, concurrency={}", properties.getConcurrency());
+    }
+
+    private void drainLoop() {
+        while (running) {
+            try {
+                // 先占全局槽位再出队，槽位满时任务留在队列里；出队时占用模型槽位，饱和模型的任务同样留在队列里
+                inFlight.acquire();
+                ChatTask task = taskManager.poll(properties.getPollIntervalMs(), TimeUnit.MILLISECONDS,
+                        modelLimiter::tryAcquire);
+                if (task == null) {
+                    inFlight.release();
+                    continue;
+                }
+                try {
+                    executor.execute(() -> run(task));
+                } catch (RejectedExecutionException e) {
+                    modelLimiter.release(task.getModel());
+                    throw e;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RejectedExecutionException e) {
+                inFlight.release();
+                break;
+            } catch (Exception e) {
+                log.error("Error in dispatcher loop", e);
+            }
+        }
+    }
+
+    private void run(ChatTask task) {
+        try {
+            taskConsumer.process(task).block();
+        } catch (Exception e) {
+            log.error("Task {} aborted: {}", task.getId(), e.getMessage());
+        } finally {
+            modelLimiter.release(task.getModel());
+            inFlight.release();
+            taskManager.signal();
+        }
+    }
+
+    @Override
+    @PreDestroy
+    public void stop() {
+        // 停止出队，等待在途任务结束
+        running = false;
+        drainThread.interrupt();
+        try {
+            drainThread.join(properties.getPollIntervalMs() * 2);
+            executor.shutdown();
+            if (!executor.awaitTermination(properties.getShutdownTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                log.warn("Task dispatcher did not drain within {}ms, cancelling in-flight tasks",
+                        properties.getShutdownTimeoutMs());
+                // 中断会让 block() 取消上游订阅，连带释放资源锁
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+    }
+}
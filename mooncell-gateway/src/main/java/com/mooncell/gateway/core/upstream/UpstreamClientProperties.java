@@ -0,0 +1,46 @@
+package com.mooncell.gateway.core.upstream;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 上游 HTTP 客户端与连接池配置 (mooncell.upstream.*)，对每个上游 Host 独立生效
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "mooncell.upstream")
+public class UpstreamClientProperties {
+
+    // 单个上游 Host 的最大连接数
+    private int maxConnections = 500;
+
+    // 等待获取连接的最大排队数
+    private int pendingAcquireMaxCount = 1000;
+
+    // 等待获取连接的超时 (毫秒)
+    private long pendingAcquireTimeoutMs = 5000;
+
+    // 空闲连接最长保留时间 (毫秒)，超过后被驱逐
+    private long maxIdleTimeMs = 60000;
+
+    // 连接最长存活时间 (毫秒)，避免长期复用到已下线的后端
+    private long maxLifeTimeMs = 600000;
+
+    // 后台驱逐空闲连接的周期 (毫秒)
+    private long evictIntervalMs = 30000;
+
+    // TCP 建连超时 (毫秒)
+    private int connectTimeoutMs = 5000;
+
+    // 两次读之间的最长间隔 (毫秒)，流式响应下相当于 token 间隔上限
+    private long responseTimeoutMs = 120000;
+
+    private boolean keepAlive = true;
+
+    // 请求 gzip 压缩响应
+    private boolean compress = true;
+
+    // 启用 HTTP/2 多路复用 (https 走 ALPN 协商，http 走 h2c)，协商失败回落 HTTP/1.1
+    private boolean http2 = false;
+}
@@ -0,0 +1,158 @@
+package com.mooncell.gateway.core.upstream;
+
+import com.mooncell.gateway.core.model.ModelInstance;
+import io.netty.channel.ChannelOption;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.SocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 上游客户端注册表：每个上游 Host (scheme://host:port) 一个独立连接池的 WebClient
+ * 客户端按需创建并长期复用，只有当 {@code ModelCacheService} 加载到的实例配置不再引用某个 Host 时才释放
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UpstreamClientRegistry {
+
+    private final WebClient.Builder webClientBuilder;
+    private final UpstreamClientProperties properties;
+
+    // Origin -> Client
+    private final Map<String, UpstreamClient> clients = new ConcurrentHashMap<>();
+
+    // Model -> 该模型实例引用的 Origin 集合
+    private final Map<String, Set<String>> originsByModel = new ConcurrentHashMap<>();
+
+    /**
+     * 获取实例所在 Host 的共享客户端
+     */
+    public WebClient client(ModelInstance instance) {
+        return clients.computeIfAbsent(originOf(instance.getUrl()), this::create).webClient;
+    }
+
+    /**
+     * 模型实例配置 (重新) 加载后调用：释放不再被任何实例引用的 Host 的连接池
+     */
+    public synchronized void onInstancesLoaded(String modelName, List<ModelInstance> instances) {
+        Set<String> origins = new HashSet<>();
+        for (ModelInstance instance : instances) {
+            origins.add(originOf(instance.getUrl()));
+        }
+        Set<String> previous = originsByModel.put(modelName, origins);
+        if (previous == null || previous.equals(origins)) {
+            return;
+        }
+
+        Set<String> referenced = new HashSet<>();
+        originsByModel.values().forEach(referenced::addAll);
+        for (String origin : previous) {
+            if (!referenced.contains(origin)) {
+                UpstreamClient removed = clients.remove(origin);
+                if (removed != null) {
+                    log.info("Upstream {} no longer referenced, disposing its connection pool", origin);
+                    removed.provider.disposeLater().subscribe();
+                }
+            }
+        }
+    }
+
+    /**
+     * 连接池指标：Origin -> 指标名 -> 值
+     */
+    public Map<String, Map<String, Integer>> poolMetrics() {
+        Map<String, Map<String, Integer>> result = new LinkedHashMap<>();
+        clients.forEach((origin, client) -> {
+            ConnectionPoolMetrics metrics = client.metrics;
+            if (metrics == null) {
+                // 尚未建立过连接
+                return;
+            }
+            Map<String, Integer> values = new LinkedHashMap<>();
+            values.put("acquired", metrics.acquiredSize());
+            values.put("allocated", metrics.allocatedSize());
+            values.put("idle", metrics.idleSize());
+            values.put("pendingAcquire", metrics.pendingAcquireSize());
+            values.put("maxAllocated", metrics.maxAllocatedSize());
+            values.put("maxPendingAcquire", metrics.maxPendingAcquireSize());
+            result.put(origin, values);
+        });
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        clients.values().forEach(client -> client.provider.dispose());
+        clients.clear();
+    }
+
+    private UpstreamClient create(String origin) {
+        log.info("Creating upstream client for {}", origin);
+        UpstreamClient client = new UpstreamClient();
+
+        client.provider = ConnectionProvider.builder("upstream-" + origin)
+                .maxConnections(properties.getMaxConnections())
+                .pendingAcquireMaxCount(properties.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(Duration.ofMillis(properties.getPendingAcquireTimeoutMs()))
+                .maxIdleTime(Duration.ofMillis(properties.getMaxIdleTimeMs()))
+                .maxLifeTime(Duration.ofMillis(properties.getMaxLifeTimeMs()))
+                .evictInBackground(Duration.ofMillis(properties.getEvictIntervalMs()))
+                .metrics(true, () -> client)
+                .build();
+
+        HttpClient httpClient = HttpClient.create(client.provider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, properties.getConnectTimeoutMs())
+                .responseTimeout(Duration.ofMillis(properties.getResponseTimeoutMs()))
+                .keepAlive(properties.isKeepAlive())
+                .compress(properties.isCompress());
+        boolean secure = origin.startsWith("https://");
+        if (properties.isHttp2()) {
+            httpClient = httpClient.protocol(HttpProtocol.HTTP11, secure ? HttpProtocol.H2 : HttpProtocol.H2C);
+        }
+        if (secure) {
+            httpClient = httpClient.secure();
+        }
+
+        client.webClient = webClientBuilder.clone()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+        return client;
+    }
+
+    static String originOf(String url) {
+        URI uri = URI.create(url);
+        int port = uri.getPort();
+        if (port == -1) {
+            port = "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+        }
+        return uri.getScheme().toLowerCase() + "://" + uri.getHost().toLowerCase() + ":" + port;
+    }
+
+    private static class UpstreamClient implements ConnectionProvider.MeterRegistrar {
+        ConnectionProvider provider;
+        WebClient webClient;
+        volatile ConnectionPoolMetrics metrics;
+
+        @Override
+        public void registerMetrics(String poolName, String id, SocketAddress remoteAddress, ConnectionPoolMetrics metrics) {
+            this.metrics = metrics;
+        }
+    }
+}
@@ -1,12 +1,24 @@
 package com.mooncell.gateway.web;
 
+import com.mooncell.gateway.core.balancer.ResourceLockManager;
+import com.mooncell.gateway.core.cache.InstanceEvent;
 import com.mooncell.gateway.core.cache.ModelCacheService;
+import com.mooncell.gateway.core.cache.ResponseCache;
 import com.mooncell.gateway.core.dao.ModelInstanceMapper;
 import com.mooncell.gateway.core.model.ModelInstance;
+import com.mooncell.gateway.core.stream.StreamBridge;
+import com.mooncell.gateway.core.task.IdempotencyIndex;
+import com.mooncell.gateway.core.task.TaskManager;
+import com.mooncell.gateway.core.task.TaskRecovery;
+import com.mooncell.gateway.core.upstream.UpstreamClientRegistry;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 import java.util.List;
 import java.util.Map;
@@ -19,6 +31,14 @@ public class AdminController {
 
     private final ModelInstanceMapper mapper;
     private final ModelCacheService cacheService;
+    private final UpstreamClientRegistry clientRegistry;
+    private final StreamBridge streamBridge;
+    private final ResourceLockManager lockManager;
+    private final TaskManager taskManager;
+    private final TaskRecovery taskRecovery;
+    private final IdempotencyIndex idempotencyIndex;
+    private final ResponseCache responseCache;
+    private final Scheduler jdbcScheduler;
 
     // Nacos-like 监控接口：获取所有服务状态
     @GetMapping("/monitor")
@@ -27,32 +47,110 @@ public class AdminController {
         return cacheService.getAllCached();
     }
 
-    // 注册新服务节点 (持久化 + 刷新缓存)
+    // 上游连接池指标：每个 Host 的已用/空闲/排队连接数
+    @GetMapping("/upstreams")
+    public Map<String, Map<String, Integer>> getUpstreamPools() {
+        return clientRegistry.poolMetrics();
+    }
+
+    // 实例自适应并发上限：当前上限与在途请求数
+    @GetMapping("/limits")
+    public Map<String, Map<String, Integer>> getConcurrencyLimits() {
+        return lockManager.metrics();
+    }
+
+    // 任务队列积压：每个 优先级/模型/租户 子队列的待执行任务数
+    @GetMapping("/queues")
+    public Map<String, Integer> getQueueDepths() {
+        return taskManager.queueDepths();
+    }
+
+    // 后台恢复进度：状态、已恢复 / 已回收任务数、本进程执行中的任务数
+    @GetMapping("/recovery")
+    public Map<String, Object> getRecoveryStatus() {
+        return taskRecovery.status();
+    }
+
+    // 幂等键索引：缓存命中、布隆过滤器判定没见过 (免查库) / 可能见过 (查库) 的次数
+    @GetMapping("/idempotency")
+    public Map<String, Long> getIdempotencyMetrics() {
+        return idempotencyIndex.metrics();
+    }
+
+    // 响应缓存指标：条目数、命中/合并/未命中次数、执行中的 leader
+    @GetMapping("/response-cache")
+    public Map<String, Long> getResponseCacheMetrics() {
+        return responseCache.metrics();
+    }
+
+    // SSE 流缓冲指标：缓冲字节数、丢弃/合并帧数、被取消的流
+    @GetMapping("/streams")
+    public Map<String, Long> getStreamMetrics() {
+        return streamBridge.metrics();
+    }
+
+    // 注册新服务节点 (持久化 + 增量更新注册表)，DB 操作在 jdbcScheduler 上执行
     @PostMapping("/instances")
-    public String addInstance(@RequestBody AddInstanceRequest request) throws Exception {
-        // 1. 获取 providerId
-        Long providerId = mapper.findProviderIdByName(request.getProvider());
-        if (providerId == null) {
-            log.error("非法服务商:{}大模型：{}", request.getProvider(), request.getModel());
-            throw new Exception("非法服务商");
-        }
+    public Mono<String> addInstance(@RequestBody AddInstanceRequest request) {
+        return Mono.fromCallable(() -> {
+            // 1. 获取 providerId
+            Long providerId = mapper.findProviderIdByName(request.getProvider());
+            if (providerId == null) {
+                log.error("非法服务商:{}大模型：{}", request.getProvider(), request.getModel());
+                throw new Exception("非法服务商");
+            }
+
+            // 2. 插入 DB
+            ModelInstance instance = ModelInstance.builder()
+                    .providerId(providerId)
+                    .modelName(request.getModel())
+                    .url(request.getUrl())
+                    .apiKey(request.getApiKey())
+                    .weight(request.getWeight() != null ? request.getWeight() : 10)
+                    .isActive(true)
+                    .build();
+
+            // 3. 写库并发布变更事件 (同一把写锁内)，新快照立即生效
+            instance.setProviderName(request.getProvider());
+            cacheService.apply(() -> mapper.insert(instance), () -> new InstanceEvent.Added(instance));
 
-        // 2. 插入 DB
-        ModelInstance instance = ModelInstance.builder()
-                .providerId(providerId)
-                .modelName(request.getModel())
-                .url(request.getUrl())
-                .apiKey(request.getApiKey())
-                .weight(10)
-                .isActive(true)
-                .build();
-        
-        mapper.insert(instance);
-
-        // 3. 触发缓存刷新 (Copy-On-Write 效果)
-        cacheService.refresh(request.getModel());
-        
-        return "Instance added and cache refreshed for model: " + request.getModel();
+            return "Instance added and cache refreshed for model: " + request.getModel();
+        }).subscribeOn(jdbcScheduler);
+    }
+
+    // 启用/停用节点 (停用后不再被选中，在途请求不受影响)
+    @PutMapping("/instances/{id}/status")
+    public Mono<String> updateStatus(@PathVariable Long id, @RequestParam boolean active) {
+        return Mono.fromCallable(() -> {
+            requireUpdated(cacheService.apply(() -> mapper.updateStatus(id, active),
+                    () -> new InstanceEvent.StatusChanged(id, active)), id);
+            return "Instance " + id + (active ? " enabled" : " disabled");
+        }).subscribeOn(jdbcScheduler);
+    }
+
+    // 调整节点权重
+    @PutMapping("/instances/{id}/weight")
+    public Mono<String> updateWeight(@PathVariable Long id, @RequestParam int weight) {
+        return Mono.fromCallable(() -> {
+            requireUpdated(cacheService.apply(() -> mapper.updateWeight(id, weight),
+                    () -> new InstanceEvent.WeightChanged(id, weight)), id);
+            return "Instance " + id + " weight set to " + weight;
+        }).subscribeOn(jdbcScheduler);
+    }
+
+    // 直接修改过 DB 时，从 DB 全量重载注册表 (运行时状态按 URL 保留)
+    @PostMapping("/instances/reload")
+    public Mono<String> reloadInstances() {
+        return Mono.fromCallable(() -> {
+            cacheService.reload();
+            return "Instance registry reloaded";
+        }).subscribeOn(jdbcScheduler);
+    }
+
+    private void requireUpdated(int rows, Long id) {
+        if (rows == 0) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Instance not found: " + id);
+        }
     }
 
     @Data
@@ -61,5 +159,6 @@ public class AdminController {
         private String url;    // 核心标识
         private String apiKey;
         private String provider;
+        private Integer weight; // 可选，默认 10
     }
 }
@@ -1,44 +1,143 @@
 package com.mooncell.gateway.web;
 
-import com.mooncell.gateway.api.OpenAiRequest;
+import com.mooncell.gateway.api.ChatRequest;
+import com.mooncell.gateway.core.cache.ResponseCache;
+import com.mooncell.gateway.core.ratelimit.RateLimitedException;
 import com.mooncell.gateway.core.stream.StreamBridge;
 import com.mooncell.gateway.core.task.TaskManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.Sinks;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @RestController
 @RequiredArgsConstructor
 @Slf4j
 public class GatewayController {
 
+    private static final String LAST_EVENT_ID = "Last-Event-ID";
+    private static final String TENANT_ID = "X-Tenant-Id";
+    private static final String BEARER = "Bearer ";
+
     private final TaskManager taskManager;
     private final StreamBridge streamBridge;
+    private final ResponseCache responseCache;
 
     /**
      * 统一入口：接收 OpenAI 格式请求 -> 转为任务 -> SSE 返回
      */
     @PostMapping(value = "/v1/chat/completions", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public Flux<String> chat(@RequestBody OpenAiRequest request) {
+    public Flux<DataBuffer> chat(@RequestBody byte[] body,
+                                 @RequestHeader(value = LAST_EVENT_ID, required = false) Long lastEventId,
+                                 @RequestHeader(value = TENANT_ID, required = false) String tenant,
+                                 @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        // 请求体保持原始字节：只扫描出路由与调度字段，持久化与转发上游都不再做 JSON 编解码
+        ChatRequest request;
+        try {
+            request = ChatRequest.parse(body);
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid request body", e);
+        }
+        if (request.getModel() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "model is required");
+        }
         log.info("Received request for model: {}", request.getModel());
-        
-        // 1. 提交任务 (持久化 + 入队)
-        String taskId = taskManager.submit(request);
-        
-        // 2. 创建 SSE 管道
-        Sinks.Many<String> sink = streamBridge.createSink(taskId);
-        
-        // 3. 返回 Flux
-        return sink.asFlux()
-                .doOnCancel(() -> {
-                    log.warn("Client cancelled request: {}", taskId);
-                    // 这里可以触发 TaskManager 取消任务逻辑（可选）
-                });
+        // 租户请求头优先于请求体 (通常由前置鉴权层注入)
+        if (tenant != null && !tenant.isBlank()) {
+            request.setTenant(tenant);
+        }
+
+        return Flux.defer(() -> submit(request, apiKey(authorization), lastEventId));
+    }
+
+    private Flux<DataBuffer> submit(ChatRequest request, String apiKey, Long lastEventId) {
+        // 0. 确定性请求先查响应缓存：命中或有相同请求正在执行时直接共享其输出，不建任务
+        String cacheKey = responseCache.keyOf(request);
+        if (cacheKey != null) {
+            Flux<DataBuffer> shared = responseCache.join(cacheKey);
+            if (shared != null) {
+                // 合并到的请求没有执行 (被限流、队列满、leader 客户端断开等)，自己重新提交；
+                // 已经收到部分输出时不能重新开始，直接结束
+                AtomicBoolean received = new AtomicBoolean();
+                return shared
+                        .doOnNext(chunk -> received.set(true))
+                        .onErrorResume(ResponseCache.AbandonedException.class, e -> received.get() ? Flux.error(e)
+                                : Flux.defer(() -> e instanceof ResponseCache.NotReplayableException
+                                        ? execute(request, apiKey, null, lastEventId)
+                                        : submit(request, apiKey, lastEventId)));
+            }
+        }
+        return execute(request, apiKey, cacheKey, lastEventId);
+    }
+
+    private Flux<DataBuffer> execute(ChatRequest request, String apiKey, String cacheKey, Long lastEventId) {
+        // 1. 提交任务 (限流 + 持久化 + 建流 + 入队)，不阻塞 Event Loop；超限时直接 429 + Retry-After
+        // 2. 订阅任务的 SSE 流 (原始 SSE 字节，直接写回客户端)；幂等重试时可携带 Last-Event-ID 续传
+        // 客户端断开时由 StreamBridge 取消上游请求并释放资源锁，任务迁移到 CANCELLED
+        return taskManager.submit(request, apiKey, cacheKey)
+                .flatMapMany(taskId -> attach(taskId, lastEventId));
+    }
+
+    /**
+     * 重新订阅任务的 SSE 流 (断线重连 / 结束后在保留期内重放)
+     */
+    @GetMapping(value = "/v1/tasks/{taskId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<DataBuffer> resume(@PathVariable String taskId,
+                                   @RequestHeader(value = LAST_EVENT_ID, required = false) Long lastEventId) {
+        log.info("Client re-attached to task {} after event {}", taskId, lastEventId);
+        return attach(taskId, lastEventId);
     }
-}
 
+    /**
+     * 限流：429 + Retry-After (默认错误处理不会带上异常里的响应头)
+     */
+    @ExceptionHandler(RateLimitedException.class)
+    public ResponseEntity<Void> rateLimited(RateLimitedException e) {
+        return ResponseEntity.status(e.getStatusCode())
+                .headers(e.getHeaders())
+                .build();
+    }
+
+    /**
+     * 上游在首字节之前返回的错误：请求本身的问题 (4xx) 原样返回状态与错误体，上游故障按 502 返回
+     */
+    @ExceptionHandler(WebClientResponseException.class)
+    public ResponseEntity<byte[]> upstreamError(WebClientResponseException e) {
+        HttpStatusCode status = e.getStatusCode().is4xxClientError() ? e.getStatusCode() : HttpStatus.BAD_GATEWAY;
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(status);
+        if (e.getHeaders().getContentType() != null) {
+            response.contentType(e.getHeaders().getContentType());
+        }
+        return response.body(e.getResponseBodyAsByteArray());
+    }
+
+    // 调用方 API Key (限流维度)，未携带时按匿名调用方计
+    private String apiKey(String authorization) {
+        if (authorization != null && authorization.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            return authorization.substring(BEARER.length()).trim();
+        }
+        return null;
+    }
+
+    private Flux<DataBuffer> attach(String taskId, Long lastEventId) {
+        return streamBridge.attach(taskId, lastEventId)
+                .doOnCancel(() -> log.warn("Client cancelled request: {}", taskId));
+    }
+}
@@ -22,12 +22,42 @@ CREATE TABLE IF NOT EXISTS chat_task (
     id VARCHAR(64) PRIMARY KEY, -- UUID
     idempotency_key VARCHAR(128) UNIQUE, -- 幂等键
     model VARCHAR(100) NOT NULL,
-    request_json TEXT NOT NULL, 
-    status VARCHAR(20) NOT NULL, -- PENDING, RUNNING, COMPLETED, FAILED
+    request_json TEXT NOT NULL, -- 请求体原文，超过 512 字节时为 "deflate:" + Base64
+    status ENUM('PENDING', 'RUNNING', 'COMPLETED', 'FAILED', 'CANCELLED') NOT NULL,
     retry_count INT DEFAULT 0,
+    priority VARCHAR(16) DEFAULT 'INTERACTIVE', -- INTERACTIVE, BATCH
+    tenant VARCHAR(64) DEFAULT 'default',
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    heartbeat_at TIMESTAMP -- RUNNING 任务的租约心跳
+);
+
+-- 兼容已有库：补齐调度字段
+ALTER TABLE chat_task ADD COLUMN IF NOT EXISTS priority VARCHAR(16) DEFAULT 'INTERACTIVE';
+ALTER TABLE chat_task ADD COLUMN IF NOT EXISTS tenant VARCHAR(64) DEFAULT 'default';
+ALTER TABLE chat_task ADD COLUMN IF NOT EXISTS heartbeat_at TIMESTAMP;
+
+-- 恢复 (PENDING 按提交顺序)、过期清理 (终态按完成时间) 与租约回收 (RUNNING 按心跳) 的查询索引
+CREATE INDEX IF NOT EXISTS idx_chat_task_status_created ON chat_task (status, created_at);
+CREATE INDEX IF NOT EXISTS idx_chat_task_status_updated ON chat_task (status, updated_at);
+CREATE INDEX IF NOT EXISTS idx_chat_task_status_heartbeat ON chat_task (status, heartbeat_at);
+
+-- 冷数据：过期的终态任务从热表移到归档表，热表只保留执行中与近期的任务
+CREATE TABLE IF NOT EXISTS chat_task_archive (
+    id VARCHAR(64) PRIMARY KEY,
+    idempotency_key VARCHAR(128),
+    model VARCHAR(100) NOT NULL,
+    request_json TEXT NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    retry_count INT DEFAULT 0,
+    priority VARCHAR(16),
+    tenant VARCHAR(64),
+    created_at TIMESTAMP,
+    updated_at TIMESTAMP,
+    archived_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
+CREATE INDEX IF NOT EXISTS idx_chat_task_archive_archived ON chat_task_archive (archived_at);
 
-INSERT INTO provider (name, description) VALUES ('openai', 'Official OpenAI API');
-INSERT INTO provider (name, description) VALUES ('azure', 'Microsoft Azure OpenAI');
+-- 重启时不重复插入
+MERGE INTO provider (name, description) KEY (name) VALUES ('openai', 'Official OpenAI API');
+MERGE INTO provider (name, description) KEY (name) VALUES ('azure', 'Microsoft Azure OpenAI');
@@ -0,0 +1,168 @@
+package com.mooncell.gateway.core.breaker;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 状态迁移 CLOSED -> OPEN -> HALF_OPEN -> CLOSED / OPEN，以及半开许可的发放与归还
+ */
+class CircuitBreakerTest {
+
+    private static CircuitBreakerProperties properties() {
+        CircuitBreakerProperties properties = new CircuitBreakerProperties();
+        properties.setWindowSize(4);
+        properties.setMinimumCalls(4);
+        properties.setFailureRateThreshold(75);
+        properties.setSlowCallRateThreshold(75);
+        properties.setSlowCallDurationMs(100);
+        properties.setOpenDurationMs(60000);
+        properties.setBackoffMultiplier(2.0);
+        properties.setMaxOpenDurationMs(600000);
+        properties.setHalfOpenPermits(3);
+        return properties;
+    }
+
+    @Test
+    void staysClosedUntilMinimumCalls() {
+        CircuitBreaker breaker = new CircuitBreaker("test", properties());
+        breaker.onError();
+        breaker.onError();
+        breaker.onError();
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+    }
+
+    @Test
+    void opensWhenFailureRateReachesThreshold() {
+        CircuitBreaker breaker = new CircuitBreaker("test", properties());
+        breaker.onSuccess(10);
+        breaker.onError();
+        breaker.onError();
+        breaker.onError();
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.isCallPermitted()).isFalse();
+        assertThat(breaker.tryAcquirePermission()).isFalse();
+    }
+
+    @Test
+    void opensWhenSlowCallRateReachesThreshold() {
+        CircuitBreaker breaker = new CircuitBreaker("test", properties());
+        breaker.onSuccess(10);
+        breaker.onSuccess(500);
+        breaker.onSuccess(500);
+        breaker.onSuccess(500);
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void countWindowEvictsOldOutcomes() {
+        CircuitBreaker breaker = new CircuitBreaker("test", properties());
+        breaker.onError();
+        breaker.onError();
+        breaker.onSuccess(10);
+        breaker.onSuccess(10);
+        breaker.onSuccess(10);
+        breaker.onSuccess(10);
+        // 窗口内只剩 4 次成功，之前的失败已被挤出
+        assertThat(breaker.getFailureRate()).isZero();
+
+        breaker.onError();
+        breaker.onError();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        breaker.onError();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void movesToHalfOpenWhenOpenDurationElapses() throws InterruptedException {
+        CircuitBreakerProperties properties = properties();
+        properties.setOpenDurationMs(50);
+        CircuitBreaker breaker = open(new CircuitBreaker("test", properties));
+
+        Thread.sleep(80);
+
+        assertThat(breaker.isCallPermitted()).isTrue();
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+    }
+
+    @Test
+    void halfOpenGrantsLimitedPermitsAndClosesAfterAllSucceed() {
+        CircuitBreaker breaker = open(new CircuitBreaker("test", properties()));
+        breaker.onProbeSuccess();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        assertThat(breaker.tryAcquirePermission()).isFalse();
+        assertThat(breaker.isCallPermitted()).isFalse();
+
+        breaker.onSuccess(10);
+        breaker.onSuccess(10);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        breaker.onSuccess(10);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        // 关闭后窗口从零开始
+        assertThat(breaker.getFailureRate()).isZero();
+    }
+
+    @Test
+    void halfOpenFailureReopensWithBackoff() {
+        CircuitBreaker breaker = open(new CircuitBreaker("test", properties()));
+        assertThat(breaker.getOpenRemainingMs()).isLessThanOrEqualTo(60000);
+
+        breaker.onProbeSuccess();
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        breaker.onError();
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        // 第二次连续打开：时长翻倍
+        assertThat(breaker.getOpenRemainingMs()).isGreaterThan(60000);
+    }
+
+    @Test
+    void slowTrialCallReopens() {
+        CircuitBreaker breaker = open(new CircuitBreaker("test", properties()));
+        breaker.onProbeSuccess();
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+
+        breaker.onSuccess(500);
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void releaseReturnsHalfOpenPermitWithoutExceedingLimit() {
+        CircuitBreaker breaker = open(new CircuitBreaker("test", properties()));
+        breaker.onProbeSuccess();
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+
+        breaker.release();
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        assertThat(breaker.tryAcquirePermission()).isFalse();
+
+        // 已成功的试探不再归还许可：成功数 + 可用许可不超过 half-open-permits
+        breaker.onSuccess(10);
+        breaker.release();
+        breaker.release();
+        breaker.release();
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        assertThat(breaker.tryAcquirePermission()).isFalse();
+    }
+
+    private static CircuitBreaker open(CircuitBreaker breaker) {
+        for (int i = 0; i < 4; i++) {
+            breaker.onError();
+        }
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        return breaker;
+    }
+}
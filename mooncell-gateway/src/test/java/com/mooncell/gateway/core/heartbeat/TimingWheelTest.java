@@ -0,0 +1,80 @@
+package com.mooncell.gateway.core.heartbeat;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 时间轮：按到期时间顺序触发、超过一圈的定时器按剩余圈数等待、不提前触发
+ */
+class TimingWheelTest {
+
+    private static final long TICK_MS = 10;
+    // 4 个槽，一圈 40ms：大部分定时器都要跨圈
+    private static final int WHEEL_SIZE = 4;
+
+    private final TimingWheel wheel = new TimingWheel("test-wheel", TICK_MS, WHEEL_SIZE);
+
+    @AfterEach
+    void tearDown() {
+        wheel.stop();
+    }
+
+    @Test
+    void firesTimersInDeadlineOrderAcrossRounds() throws InterruptedException {
+        long[] delays = {150, 30, 90, 0, 60, 120};
+        List<Long> fired = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(delays.length);
+        for (long delay : delays) {
+            wheel.schedule(() -> {
+                fired.add(delay);
+                done.countDown();
+            }, delay);
+        }
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(fired).containsExactly(0L, 30L, 60L, 90L, 120L, 150L);
+    }
+
+    @Test
+    void neverFiresBeforeDeadline() throws InterruptedException {
+        long delayMs = 135;
+        CountDownLatch done = new CountDownLatch(1);
+        long[] elapsed = new long[1];
+        long start = System.nanoTime();
+        wheel.schedule(() -> {
+            elapsed[0] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            done.countDown();
+        }, delayMs);
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        // 135ms = 3 圈多 15ms：圈数算错会提前一圈或多圈触发
+        assertThat(elapsed[0]).isGreaterThanOrEqualTo(delayMs);
+    }
+
+    @Test
+    void failingTaskDoesNotStopTheWheel() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        wheel.schedule(() -> {
+            throw new IllegalStateException("boom");
+        }, 0);
+        wheel.schedule(done::countDown, 20);
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void stoppedWheelDoesNotFire() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        wheel.schedule(done::countDown, 50);
+        wheel.stop();
+
+        assertThat(done.await(200, TimeUnit.MILLISECONDS)).isFalse();
+    }
+}
@@ -0,0 +1,30 @@
+package com.mooncell.gateway.core.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 提交准入扣减的令牌可以归还：幂等重放不占用调用方与模型的配额
+ */
+class RateLimiterTest {
+
+    @Test
+    void refundedAdmissionDoesNotCountAgainstTheLimit() {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.getKey().setRpm(1);
+        properties.getModel().setTpm(1000);
+        RateLimiter limiter = new RateLimiter(properties);
+
+        RateLimiter.Admission first = limiter.checkSubmit("key", "gpt-4", 600);
+        assertThatThrownBy(() -> limiter.checkSubmit("key", "gpt-4", 600))
+                .isInstanceOf(RateLimitedException.class);
+
+        // 归还后请求数与 token 数两个桶都恢复
+        first.refund();
+        assertThatCode(() -> limiter.checkSubmit("key", "gpt-4", 600)).doesNotThrowAnyException();
+        assertThatThrownBy(() -> limiter.checkSubmit("key", "gpt-4", 600))
+                .isInstanceOf(RateLimitedException.class);
+    }
+}
@@ -0,0 +1,221 @@
+package com.mooncell.gateway.core.stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+import reactor.test.subscriber.TestSubscriber;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 环形缓冲区：按 Last-Event-ID 重放、事件 ID 注入 (LF / CRLF)、溢出策略
+ */
+class BufferedStreamTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private final StreamBridge.Counters counters = new StreamBridge.Counters();
+
+    private BufferedStream stream(long maxBytes, int maxFrames, OverflowPolicy policy) {
+        return new BufferedStream("task-1", new StreamBridge.Settings(maxBytes, maxFrames, policy, true, 0),
+                counters, s -> { });
+    }
+
+    private BufferedStream stream() {
+        return stream(1 << 20, 1024, OverflowPolicy.DROP_OLDEST);
+    }
+
+    @Test
+    void replaysFromLastEventId() {
+        BufferedStream stream = stream();
+        stream.offer(frame("data: a\n\n"));
+        stream.offer(frame("data: b\n\n"));
+        stream.offer(frame("data: c\n\n"));
+        stream.complete(null);
+
+        StepVerifier.create(read(stream.attach(null)))
+                .expectNext("data: a\nid: 1\n\n", "data: b\nid: 2\n\n", "data: c\nid: 3\n\n")
+                .expectComplete()
+                .verify(TIMEOUT);
+        StepVerifier.create(read(stream.attach(1L)))
+                .expectNext("data: b\nid: 2\n\n", "data: c\nid: 3\n\n")
+                .expectComplete()
+                .verify(TIMEOUT);
+        StepVerifier.create(read(stream.attach(3L)))
+                .expectComplete()
+                .verify(TIMEOUT);
+    }
+
+    @Test
+    void injectsEventIdsIntoCrlfFramesAndSkipsPartialChunks() {
+        BufferedStream stream = stream();
+        stream.offer(frame("data: a\r\n\r\n"));
+        // 半个帧不带 id，帧结束的那个 chunk 才带
+        stream.offer(frame("data: b"));
+        stream.offer(frame("c\n\n"));
+        stream.complete(null);
+
+        StepVerifier.create(read(stream.attach(null)))
+                .expectNext("data: a\r\nid: 1\r\n\r\n", "data: b", "c\nid: 3\n\n")
+                .expectComplete()
+                .verify(TIMEOUT);
+    }
+
+    @Test
+    void liveSubscriberReceivesChunksAsTheyArrive() {
+        BufferedStream stream = stream();
+
+        StepVerifier.create(read(stream.attach(null)))
+                .then(() -> stream.offer(frame("data: a\n\n")))
+                .expectNext("data: a\nid: 1\n\n")
+                .then(() -> stream.offer(frame("data: b\n\n")))
+                .expectNext("data: b\nid: 2\n\n")
+                .then(() -> stream.complete(null))
+                .expectComplete()
+                .verify(TIMEOUT);
+    }
+
+    @Test
+    void evictedOffsetsAreGoneButLaterOnesStillReplay() {
+        BufferedStream stream = stream(1 << 20, 2, OverflowPolicy.DROP_OLDEST);
+        // 已交付的 chunk 只为重放保留，超出帧数上限时先被淘汰
+        StepVerifier.create(read(stream.attach(null)))
+                .then(() -> {
+                    for (String data : new String[]{"a", "b", "c", "d"}) {
+                        stream.offer(frame("data: " + data + "\n\n"));
+                    }
+                    stream.complete(null);
+                })
+                .expectNextCount(4)
+                .expectComplete()
+                .verify(TIMEOUT);
+
+        StepVerifier.create(read(stream.attach(null)))
+                .expectErrorSatisfies(e -> assertThat(((ResponseStatusException) e).getStatusCode())
+                        .isEqualTo(HttpStatus.GONE))
+                .verify(TIMEOUT);
+        StepVerifier.create(read(stream.attach(2L)))
+                .expectNext("data: c\nid: 3\n\n", "data: d\nid: 4\n\n")
+                .expectComplete()
+                .verify(TIMEOUT);
+        assertThat(counters.droppedFrames.sum()).isZero();
+    }
+
+    @Test
+    void rejectsUnknownOffsets() {
+        BufferedStream stream = stream();
+        stream.offer(frame("data: a\n\n"));
+
+        StepVerifier.create(stream.attach(5L))
+                .expectErrorSatisfies(e -> assertThat(((ResponseStatusException) e).getStatusCode())
+                        .isEqualTo(HttpStatus.BAD_REQUEST))
+                .verify(TIMEOUT);
+    }
+
+    @Test
+    void dropOldestDiscardsUndeliveredFramesForSlowClient() {
+        BufferedStream stream = stream(1 << 20, 2, OverflowPolicy.DROP_OLDEST);
+
+        StepVerifier.create(read(stream.attach(null)), 0)
+                .then(() -> {
+                    for (String data : new String[]{"a", "b", "c", "d"}) {
+                        stream.offer(frame("data: " + data + "\n\n"));
+                    }
+                    stream.complete(null);
+                })
+                .thenRequest(Long.MAX_VALUE)
+                .expectNext("data: c\nid: 3\n\n", "data: d\nid: 4\n\n")
+                .expectComplete()
+                .verify(TIMEOUT);
+        assertThat(counters.droppedFrames.sum()).isEqualTo(2);
+    }
+
+    @Test
+    void coalesceMergesQueuedChunksWithoutLosingData() {
+        BufferedStream stream = stream(1 << 20, 2, OverflowPolicy.COALESCE);
+        stream.offer(frame("data: a\n\n"));
+        stream.offer(frame("data: b\n\n"));
+        stream.offer(frame("data: c\n\n"));
+        stream.complete(null);
+
+        // 合并后的 chunk 取最后一个序号
+        StepVerifier.create(read(stream.attach(null)))
+                .expectNext("data: a\n\ndata: b\n\ndata: c\nid: 3\n\n")
+                .expectComplete()
+                .verify(TIMEOUT);
+        assertThat(counters.coalescedFrames.sum()).isEqualTo(2);
+    }
+
+    @Test
+    void cancelUpstreamPolicyCancelsStreamAndUpstream() {
+        BufferedStream stream = stream(1 << 20, 2, OverflowPolicy.CANCEL_UPSTREAM);
+        Flux<String> upstream = stream.cancellable(Flux.never());
+        // 客户端已连接但不读取
+        TestSubscriber<String> client = TestSubscriber.<String>builder().initialRequest(0).build();
+        read(stream.attach(null)).subscribe(client);
+
+        stream.offer(frame("data: a\n\n"));
+        stream.offer(frame("data: b\n\n"));
+        StepVerifier.create(upstream)
+                .then(() -> stream.offer(frame("data: c\n\n")))
+                .expectError(StreamCancelledException.class)
+                .verify(TIMEOUT);
+        assertThat(client.expectTerminalError()).isInstanceOf(StreamCancelledException.class);
+
+        assertThat(stream.isCancelled()).isTrue();
+        assertThat(counters.cancelledStreams.sum()).isEqualTo(1);
+        assertThat(counters.bufferedBytes.sum()).isZero();
+    }
+
+    @ParameterizedTest
+    @EnumSource(OverflowPolicy.class)
+    void unattachedStreamEvictsIntoReplayGapInsteadOfCancelling(OverflowPolicy policy) {
+        // 恢复的任务开始时没有客户端：超限的输出转为重放缺口，上游继续执行
+        BufferedStream stream = stream(32, 1024, policy);
+        Flux<String> upstream = stream.cancellable(Flux.just("upstream-done"));
+        for (int i = 1; i <= 4; i++) {
+            stream.offer(frame("data: 0123456789\n\n"));
+        }
+        stream.complete(null);
+
+        assertThat(stream.isCancelled()).isFalse();
+        assertThat(counters.cancelledStreams.sum()).isZero();
+        assertThat(counters.droppedFrames.sum()).isEqualTo(3);
+        StepVerifier.create(upstream)
+                .expectNext("upstream-done")
+                .expectComplete()
+                .verify(TIMEOUT);
+        // 晚连接的客户端从头读取：数据已淘汰，返回 410
+        StepVerifier.create(stream.attach(null))
+                .expectErrorSatisfies(e -> assertThat(((ResponseStatusException) e).getStatusCode())
+                        .isEqualTo(HttpStatus.GONE))
+                .verify(TIMEOUT);
+        // 偏移仍在保留范围内的续传照常工作
+        StepVerifier.create(read(stream.attach(3L)))
+                .expectNext("data: 0123456789\nid: 4\n\n")
+                .expectComplete()
+                .verify(TIMEOUT);
+    }
+
+    private static DataBuffer frame(String data) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Flux<String> read(Flux<DataBuffer> buffers) {
+        return buffers.map(buffer -> {
+            String text = buffer.toString(StandardCharsets.UTF_8);
+            DataBufferUtils.release(buffer);
+            return text;
+        });
+    }
+}
@@ -0,0 +1,110 @@
+package com.mooncell.gateway.core.task;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 幂等键索引：缓存命中 / 布隆过滤器分类，以及布隆过滤器轮换不产生漏判
+ */
+class IdempotencyIndexTest {
+
+    private static final int EXPECTED_KEYS = 1000;
+
+    @Test
+    void classifiesUnseenKeysAsNewAndRecordedKeysAsMaybe() {
+        IdempotencyProperties properties = new IdempotencyProperties();
+        properties.setBloomExpectedKeys(EXPECTED_KEYS);
+        // 未调用 warm()，不会访问 TaskMapper
+        IdempotencyIndex index = new IdempotencyIndex(null, properties);
+
+        assertThat(index.get("key-1")).isNull();
+        assertThat(index.classify("key-1")).isEqualTo(IdempotencyIndex.Lookup.NEW);
+
+        index.record("key-1", "task-1");
+
+        assertThat(index.get("key-1")).isEqualTo("task-1");
+        assertThat(index.classify("key-1")).isEqualTo(IdempotencyIndex.Lookup.MAYBE);
+        assertThat(index.metrics())
+                .containsEntry("cacheHits", 1L)
+                .containsEntry("bloomMisses", 1L)
+                .containsEntry("bloomPositives", 1L)
+                .containsEntry("bloomGenerationKeys", 1L);
+    }
+
+    @Test
+    void keepsPreviousGenerationAcrossRotation() {
+        IdempotencyIndex.RotatingBloomFilter filter = new IdempotencyIndex.RotatingBloomFilter(EXPECTED_KEYS, 0.01);
+        // 写满第一代后轮换，再写半代
+        for (int i = 0; i < EXPECTED_KEYS * 3 / 2; i++) {
+            filter.put("key-" + i);
+        }
+        for (int i = 0; i < EXPECTED_KEYS * 3 / 2; i++) {
+            assertThat(filter.mightContain("key-" + i)).as("key-" + i).isTrue();
+        }
+
+        // 第二次轮换后第一代被丢弃，第二代仍然可查
+        for (int i = EXPECTED_KEYS * 3 / 2; i < EXPECTED_KEYS * 2; i++) {
+            filter.put("key-" + i);
+        }
+        for (int i = EXPECTED_KEYS; i < EXPECTED_KEYS * 2; i++) {
+            assertThat(filter.mightContain("key-" + i)).as("key-" + i).isTrue();
+        }
+    }
+
+    @Test
+    void concurrentPutsDuringRotationAreNotLost() throws Exception {
+        IdempotencyIndex.RotatingBloomFilter filter = new IdempotencyIndex.RotatingBloomFilter(EXPECTED_KEYS, 0.01);
+        int threads = 8;
+        // 总量 1.5 代：恰好轮换一次，所有键都应在当前代或上一代中
+        int perThread = EXPECTED_KEYS * 3 / 2 / threads;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        filter.put("key-" + thread + "-" + i);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < perThread; i++) {
+                assertThat(filter.mightContain("key-" + t + "-" + i)).as("key-" + t + "-" + i).isTrue();
+            }
+        }
+    }
+
+    @Test
+    void falsePositiveRateStaysBounded() {
+        IdempotencyIndex.RotatingBloomFilter filter = new IdempotencyIndex.RotatingBloomFilter(EXPECTED_KEYS, 0.01);
+        for (int i = 0; i < EXPECTED_KEYS * 3 / 2; i++) {
+            filter.put("key-" + i);
+        }
+
+        int positives = 0;
+        int probes = 10000;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain("unseen-" + i)) {
+                positives++;
+            }
+        }
+        // 查询两代，误判率上界约为单代的两倍
+        assertThat(positives).isLessThan(probes * 3 / 100);
+    }
+}
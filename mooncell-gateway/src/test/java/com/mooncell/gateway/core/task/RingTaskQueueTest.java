@@ -0,0 +1,203 @@
+package com.mooncell.gateway.core.task;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 多生产者/多消费者压力测试：不丢任务、不重复出队，BLOCKING 策略下空队列的消费者能被入队唤醒；
+ * 等待区与环形队列共用容量
+ */
+class RingTaskQueueTest {
+
+    private static final int PRODUCERS = 8;
+    private static final int CONSUMERS = 4;
+    private static final int TASKS_PER_PRODUCER = 5000;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @ParameterizedTest
+    @EnumSource(QueueProperties.WaitStrategy.class)
+    @Timeout(60)
+    void deliversEveryTaskExactlyOnce(QueueProperties.WaitStrategy strategy) throws Exception {
+        // 容量远小于任务总数，覆盖环形队列满后生产者重试与槽位多圈复用
+        RingTaskQueue queue = queue(strategy, 64);
+        int total = PRODUCERS * TASKS_PER_PRODUCER;
+        Set<String> received = ConcurrentHashMap.newKeySet();
+        AtomicInteger duplicates = new AtomicInteger();
+        AtomicInteger consumed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            int producer = p;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < TASKS_PER_PRODUCER; i++) {
+                    ChatTask task = task(producer + "-" + i, "model-" + (i % 3));
+                    while (!queue.offer(task)) {
+                        Thread.yield();
+                    }
+                }
+                return null;
+            }));
+        }
+        for (int c = 0; c < CONSUMERS; c++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                while (consumed.get() < total) {
+                    ChatTask task = queue.poll(10, TimeUnit.MILLISECONDS, model -> true);
+                    if (task != null) {
+                        if (!received.add(task.getId())) {
+                            duplicates.incrementAndGet();
+                        }
+                        consumed.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(50, TimeUnit.SECONDS);
+        }
+
+        assertThat(duplicates).hasValue(0);
+        assertThat(received).hasSize(total);
+        assertThat(queue.size()).isZero();
+    }
+
+    @Test
+    @Timeout(10)
+    void blockedConsumersWakeUpOnOffer() throws Exception {
+        RingTaskQueue queue = queue(QueueProperties.WaitStrategy.BLOCKING, 16);
+        List<Thread> threads = new ArrayList<>();
+        List<Future<ChatTask>> polls = new ArrayList<>();
+        for (int c = 0; c < CONSUMERS; c++) {
+            CountDownLatch started = new CountDownLatch(1);
+            polls.add(executor.submit(() -> {
+                threads.add(Thread.currentThread());
+                started.countDown();
+                // 等待时间远大于测试超时：只有入队唤醒才能让 poll 及时返回
+                return queue.poll(1, TimeUnit.MINUTES, model -> true);
+            }));
+            started.await();
+        }
+        awaitParked(threads);
+
+        for (int i = 0; i < CONSUMERS; i++) {
+            assertThat(queue.offer(task("task-" + i, "model"))).isTrue();
+        }
+
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        for (Future<ChatTask> poll : polls) {
+            ids.add(poll.get(5, TimeUnit.SECONDS).getId());
+        }
+        assertThat(ids).hasSize(CONSUMERS);
+    }
+
+    @Test
+    @Timeout(10)
+    void blockedConsumerWakesUpOnSignalWhenDeferredModelIsAdmitted() throws Exception {
+        RingTaskQueue queue = queue(QueueProperties.WaitStrategy.BLOCKING, 16);
+        AtomicInteger admitted = new AtomicInteger();
+        queue.offer(task("deferred", "model"));
+
+        List<Thread> threads = new ArrayList<>();
+        CountDownLatch started = new CountDownLatch(1);
+        Future<ChatTask> poll = executor.submit(() -> {
+            threads.add(Thread.currentThread());
+            started.countDown();
+            // 模型饱和：任务转入等待区，直到槽位释放 (admitted > 0)
+            return queue.poll(1, TimeUnit.MINUTES, model -> admitted.get() > 0);
+        });
+        started.await();
+        awaitParked(threads);
+
+        admitted.incrementAndGet();
+        queue.signal();
+
+        assertThat(poll.get(5, TimeUnit.SECONDS).getId()).isEqualTo("deferred");
+    }
+
+    @Test
+    @Timeout(10)
+    void signalBeforeParkingIsNotLost() throws Exception {
+        RingTaskQueue queue = queue(QueueProperties.WaitStrategy.BLOCKING, 16);
+        queue.offer(task("deferred", "model"));
+        assertThat(queue.poll(10, TimeUnit.MILLISECONDS, model -> false)).isNull();
+
+        // 槽位恰好在消费者检查等待区之后、挂起之前释放
+        AtomicInteger checks = new AtomicInteger();
+        ChatTask task = queue.poll(1, TimeUnit.MINUTES, model -> {
+            if (checks.getAndIncrement() == 0) {
+                queue.signal();
+                return false;
+            }
+            return true;
+        });
+
+        assertThat(task.getId()).isEqualTo("deferred");
+    }
+
+    @Test
+    void deferredTasksCountAgainstCapacity() throws Exception {
+        RingTaskQueue queue = queue(QueueProperties.WaitStrategy.BUSY_SPIN, 4);
+        for (int i = 0; i < 4; i++) {
+            assertThat(queue.offer(task("task-" + i, "model"))).isTrue();
+        }
+        // 模型饱和：任务全部从环形队列转入等待区
+        assertThat(queue.poll(10, TimeUnit.MILLISECONDS, model -> false)).isNull();
+        assertThat(queue.depths()).containsEntry("ring", 0).containsEntry("deferred/model", 4);
+
+        assertThat(queue.offer(task("task-4", "model"))).isFalse();
+        assertThat(queue.size()).isEqualTo(4);
+
+        assertThat(queue.poll(10, TimeUnit.MILLISECONDS, model -> true).getId()).isEqualTo("task-0");
+        assertThat(queue.offer(task("task-4", "model"))).isTrue();
+        assertThat(queue.size()).isEqualTo(4);
+    }
+
+    private static RingTaskQueue queue(QueueProperties.WaitStrategy strategy, int capacity) {
+        QueueProperties properties = new QueueProperties();
+        properties.setType("ring");
+        properties.setCapacity(capacity);
+        properties.setWaitStrategy(strategy);
+        return new RingTaskQueue(properties);
+    }
+
+    private static ChatTask task(String id, String model) {
+        return ChatTask.builder().id(id).model(model).priority(TaskPriority.INTERACTIVE).build();
+    }
+
+    /**
+     * 等到所有消费者都已在条件上挂起，确保测到的是唤醒而不是入队先于等待
+     */
+    private static void awaitParked(List<Thread> threads) throws InterruptedException {
+        for (Thread thread : List.copyOf(threads)) {
+            while (thread.getState() != Thread.State.TIMED_WAITING) {
+                Thread.sleep(5);
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.mooncell.gateway.core.task;
+
+import com.mooncell.gateway.core.dao.TaskMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 保留期按数据库时钟计算：与写入 updated_at 的时钟一致
+ */
+class TaskPurgerTest {
+
+    private final TaskMapper taskMapper = mock(TaskMapper.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void cutoffsFollowTheDatabaseClock() {
+        // 数据库时钟与网关主机时钟相差很远
+        LocalDateTime dbNow = LocalDateTime.of(2001, 1, 1, 0, 0);
+        when(taskMapper.now()).thenReturn(dbNow);
+        when(taskMapper.findExpiredIds(any(), anyInt())).thenReturn(List.of());
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.getArgument(0, TransactionCallback.class).doInTransaction(null));
+
+        RetentionProperties properties = new RetentionProperties();
+        properties.setHotRetentionMs(60_000);
+        properties.setArchiveRetentionMs(3_600_000);
+        new TaskPurger(taskMapper, properties, transactionTemplate).purge();
+
+        verify(taskMapper).findExpiredIds(dbNow.minusMinutes(1), properties.getBatchSize());
+        verify(taskMapper).purgeArchive(dbNow.minusHours(1), properties.getBatchSize());
+    }
+}
@@ -0,0 +1,77 @@
+package com.mooncell.gateway.core.task;
+
+import com.mooncell.gateway.core.dao.TaskMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 恢复线程遇到暂时性 DB 错误时退避重试，不会停止恢复与租约回收
+ */
+class TaskRecoveryTest {
+
+    private final TaskMapper taskMapper = mock(TaskMapper.class);
+    private final TaskManager taskManager = mock(TaskManager.class);
+    private TaskRecovery recovery;
+
+    @AfterEach
+    void tearDown() {
+        if (recovery != null) {
+            recovery.stop();
+        }
+    }
+
+    @Test
+    void keepsRecoveringAndReclaimingAfterTransientDbErrors() throws InterruptedException {
+        ChatTask pending = ChatTask.builder().id("pending-1").model("gpt-4").build();
+        ChatTask orphaned = ChatTask.builder().id("orphaned-1").model("gpt-4").build();
+        when(taskMapper.now()).thenAnswer(invocation -> LocalDateTime.now());
+        when(taskMapper.findPendingPage(any(), any(), anyString(), anyInt()))
+                .thenThrow(new QueryTimeoutException("lock timeout"))
+                .thenReturn(List.of(pending));
+        when(taskMapper.findStaleRunningIds(any(), anyString(), anyInt()))
+                .thenThrow(new QueryTimeoutException("lock timeout"))
+                .thenThrow(new QueryTimeoutException("lock timeout"))
+                .thenReturn(List.of("orphaned-1"))
+                .thenReturn(List.of());
+        when(taskMapper.reclaim(eq("orphaned-1"), any())).thenReturn(1);
+        when(taskMapper.findPendingByIds(anyList())).thenReturn(List.of(orphaned));
+        when(taskManager.runningTasks()).thenReturn(Set.of());
+        when(taskManager.requeue(any())).thenReturn(true);
+
+        RecoveryProperties properties = new RecoveryProperties();
+        properties.setBackoffMs(5);
+        properties.setReclaimIntervalMs(10);
+        recovery = new TaskRecovery(taskMapper, taskManager, new QueueProperties(), properties);
+        recovery.init();
+        recovery.start();
+
+        awaitTrue(() -> ((Long) recovery.status().get("reclaimed")) == 1);
+        assertThat(recovery.status())
+                .containsEntry("state", TaskRecovery.State.RECOVERED)
+                .containsEntry("recovered", 1L);
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met within 5s").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.mooncell.gateway.web;
+
+import com.mooncell.gateway.config.BlockHoundSupport;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 端到端：/v1/chat/completions 经 提交 (限流、WAL、入队) -> 调度 -> 上游 SSE -> StreamBridge -> 客户端。
+ * 上游是本地 HttpServer 桩；mvn -Pblockhound test 时整条链路运行在 BlockHound 下，Event Loop 上的阻塞调用会让测试失败
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:chat-stream-test;DB_CLOSE_DELAY=-1",
+        "mooncell.heartbeat.enabled=false",
+        "logging.level.com.mooncell.gateway.core.dao=WARN"
+})
+class ChatCompletionsStreamTest {
+
+    private static final int CHUNKS = 5;
+
+    private static HttpServer upstream;
+    private static final List<String> upstreamBodies = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    private WebTestClient client;
+
+    @BeforeAll
+    static void startUpstream() throws IOException {
+        upstream = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        upstream.createContext("/v1/chat/completions", exchange -> {
+            upstreamBodies.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            exchange.getResponseHeaders().set("Content-Type", MediaType.TEXT_EVENT_STREAM_VALUE);
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int i = 0; i < CHUNKS; i++) {
+                    out.write(("data: {\"choices\":[{\"delta\":{\"content\":\"tok" + i + "\"}}]}\n\n")
+                            .getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                }
+                out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        upstream.start();
+    }
+
+    @AfterAll
+    static void stopUpstream() {
+        upstream.stop(0);
+    }
+
+    @Test
+    void streamsUpstreamChunksThroughTheTaskPipeline() {
+        client.post().uri("/admin/instances")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of(
+                        "model", "gpt-4",
+                        "url", "http://127.0.0.1:" + upstream.getAddress().getPort() + "/v1",
+                        "apiKey", "test-key",
+                        "provider", "openai"))
+                .exchange()
+                .expectStatus().isOk();
+
+        String body = client.mutate().responseTimeout(Duration.ofSeconds(30)).build()
+                .post().uri("/v1/chat/completions")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"model\":\"gpt-4\",\"messages\":[{\"role\":\"user\",\"content\":\"hi\"}],"
+                        + "\"stream\":true,\"priority\":\"batch\",\"idempotencyKey\":\"stream-test-1\"}")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertThat(body).isNotNull();
+        for (int i = 0; i < CHUNKS; i++) {
+            assertThat(body).contains("\"content\":\"tok" + i + "\"");
+        }
+        assertThat(body).contains("data: [DONE]");
+        // 网关字段不转发给上游，其余字段原样透传
+        assertThat(upstreamBodies).hasSize(1);
+        assertThat(upstreamBodies.get(0))
+                .doesNotContain("priority")
+                .doesNotContain("idempotencyKey")
+                .contains("\"messages\"");
+    }
+
+    /**
+     * 确认 -Pblockhound 的 JVM 参数确实生效：非阻塞线程上的阻塞调用必须报错
+     */
+    @Test
+    @EnabledIfSystemProperty(named = BlockHoundSupport.ENABLED_PROPERTY, matches = "true")
+    void blockHoundRejectsBlockingCallsOnNonBlockingThreads() {
+        assertThatThrownBy(() -> Mono.fromCallable(() -> {
+                    Thread.sleep(1);
+                    return true;
+                }).subscribeOn(Schedulers.parallel()).block(Duration.ofSeconds(5)))
+                .hasMessageContaining("Blocking call!");
+    }
+}
@@ -0,0 +1,102 @@
+package com.mooncell.gateway.web;
+
+import com.mooncell.gateway.core.breaker.CircuitBreaker;
+import com.mooncell.gateway.core.cache.ModelCacheService;
+import com.mooncell.gateway.core.model.ModelInstance;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 上游对请求本身返回 4xx (请求体错误、未知模型) 时，实例是健康的：不计入熔断失败，不换实例重试
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:upstream-client-error-test;DB_CLOSE_DELAY=-1",
+        "mooncell.heartbeat.enabled=false",
+        "mooncell.breaker.window-size=4",
+        "mooncell.breaker.minimum-calls=2",
+        "logging.level.com.mooncell.gateway.core.dao=WARN"
+})
+class UpstreamClientErrorTest {
+
+    private static final int REQUESTS = 6;
+    private static final String ERROR_BODY = "{\"error\":{\"message\":\"invalid messages\"}}";
+
+    private static HttpServer upstream;
+    private static final AtomicInteger upstreamCalls = new AtomicInteger();
+
+    @Autowired
+    private WebTestClient client;
+
+    @Autowired
+    private ModelCacheService cacheService;
+
+    @BeforeAll
+    static void startUpstream() throws IOException {
+        upstream = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        upstream.createContext("/v1/chat/completions", exchange -> {
+            upstreamCalls.incrementAndGet();
+            exchange.getRequestBody().readAllBytes();
+            byte[] body = ERROR_BODY.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", MediaType.APPLICATION_JSON_VALUE);
+            exchange.sendResponseHeaders(400, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        upstream.start();
+    }
+
+    @AfterAll
+    static void stopUpstream() {
+        upstream.stop(0);
+    }
+
+    @Test
+    void badRequestsDoNotOpenTheBreaker() {
+        client.post().uri("/admin/instances")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of(
+                        "model", "gpt-4",
+                        "url", "http://127.0.0.1:" + upstream.getAddress().getPort() + "/v1",
+                        "apiKey", "test-key",
+                        "provider", "openai"))
+                .exchange()
+                .expectStatus().isOk();
+
+        WebTestClient slow = client.mutate().responseTimeout(Duration.ofSeconds(30)).build();
+        for (int i = 0; i < REQUESTS; i++) {
+            slow.post().uri("/v1/chat/completions")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue("{\"model\":\"gpt-4\",\"messages\":\"not-a-list\",\"stream\":true}")
+                    .exchange()
+                    .expectStatus().isEqualTo(HttpStatus.BAD_REQUEST)
+                    .expectBody(String.class).isEqualTo(ERROR_BODY);
+        }
+
+        // 每个请求只调用一次上游 (不换实例重试)，熔断器保持关闭
+        assertThat(upstreamCalls).hasValue(REQUESTS);
+        List<ModelInstance> instances = cacheService.getInstances("gpt-4");
+        assertThat(instances).hasSize(1);
+        assertThat(instances.get(0).getBreaker().getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(instances.get(0).getBreaker().getFailureRate()).isZero();
+        assertThat(instances.get(0).isHealthy()).isTrue();
+    }
+}